@@ -0,0 +1,104 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package benchmark;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and prints the results per particle, per cell or
+ * per collision.
+ *
+ * Launch using:
+ * <pre>
+ * java -cp target/benchmarks.jar benchmark.BenchmarkRunner [regexp]
+ * </pre>
+ * where the optional regular expression selects the benchmarks, e.g.
+ * "SolverBenchmark". The benchmarks can also be run by the JMH main class
+ * directly, which reports the time per call.
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = (args.length > 0) ? args[0] : "benchmark\\..*Benchmark";
+		Options options = new OptionsBuilder().include(include).build();
+		Collection<RunResult> results = new Runner(options).run();
+
+		System.out.println();
+		System.out.println(String.format("%-60s %12s %12s", "benchmark", "ns/call", "ns/unit"));
+		for (RunResult result : results) {
+			BenchmarkParams params = result.getParams();
+			double score = result.getPrimaryResult().getScore();
+			System.out.println(String.format("%-60s %12.1f %12.3f %s",
+					describe(params), score, score / units(params), unitName(params)));
+		}
+	}
+
+	/** Benchmark name with its parameters */
+	private static String describe(BenchmarkParams params) {
+		String name = params.getBenchmark();
+		name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+		String variant = params.getParam("solver");
+		if (variant == null) {
+			variant = params.getParam("interpolator");
+		}
+		if (variant == null) {
+			variant = params.getParam("algorithm");
+		}
+		if (perCollision(params)) {
+			return name + " " + variant;
+		}
+		return name + " " + variant + " n=" + params.getParam("particles")
+				+ " grid=" + params.getParam("gridCells");
+	}
+
+	/** Collisions are already measured per collision. */
+	private static boolean perCollision(BenchmarkParams params) {
+		return params.getBenchmark().contains("CollisionBenchmark");
+	}
+
+	/** Field solves are normalized per cell, everything else per particle. */
+	private static boolean perCell(BenchmarkParams params) {
+		return params.getBenchmark().contains("PoissonSolverBenchmark");
+	}
+
+	private static double units(BenchmarkParams params) {
+		if (perCollision(params)) {
+			return 1;
+		}
+		if (perCell(params)) {
+			int cells = Integer.parseInt(params.getParam("gridCells"));
+			return (double) cells * cells;
+		}
+		return Integer.parseInt(params.getParam("particles"));
+	}
+
+	private static String unitName(BenchmarkParams params) {
+		if (perCollision(params)) {
+			return "ns/collision";
+		}
+		return perCell(params) ? "ns/cell" : "ns/particle";
+	}
+}
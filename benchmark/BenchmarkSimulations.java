@@ -0,0 +1,81 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package benchmark;
+
+import java.util.Random;
+
+import physics.Settings;
+import physics.Simulation;
+import physics.fields.SimpleSolver;
+import physics.grid.ChargeConservingCIC;
+import physics.grid.InterpolatorAlgorithm;
+import physics.particles.ParticleFull;
+
+/**
+ * Creates the simulations on which the benchmarks operate.
+ */
+public class BenchmarkSimulations {
+
+	/** Seed of the particles, so that every run steps the same particles */
+	private static final long SEED = 0;
+
+	/**
+	 * Creates a square simulation of random particles on a square grid,
+	 * set up in the same way as in PoissonSolverCalculations. The particles
+	 * are drawn from a fixed seed instead of the unseeded random particles
+	 * of the settings.
+	 * @param particles number of particles
+	 * @param gridCells number of cells in x- and in y-direction
+	 */
+	public static Simulation create(int particles, int gridCells) {
+		return create(particles, gridCells, new ChargeConservingCIC());
+	}
+
+	public static Simulation create(int particles, int gridCells, InterpolatorAlgorithm interpolator) {
+		Settings stt = new Settings();
+		stt.setSimulationWidth(100);
+		stt.setSimulationHeight(100);
+		stt.setSpeedOfLight(Math.sqrt(stt.getSimulationWidth() * stt.getSimulationWidth() +
+				stt.getSimulationHeight() * stt.getSimulationHeight())/5);
+
+		stt.setNumOfParticles(0);
+		double maxSpeed = stt.getSpeedOfLight() / 10;
+		Random random = new Random(SEED);
+		for (int i = 0; i < particles; i++) {
+			ParticleFull p = new ParticleFull();
+			p.setX(stt.getSimulationWidth() * random.nextDouble());
+			p.setY(stt.getSimulationHeight() * random.nextDouble());
+			p.setRadius(0.1);
+			double phi = 2 * Math.PI * random.nextDouble();
+			double speed = maxSpeed * random.nextDouble();
+			p.setVx(speed * Math.cos(phi));
+			p.setVy(speed * Math.sin(phi));
+			p.setMass(1);
+			p.setCharge(random.nextBoolean() ? 0.01 : -0.01);
+			stt.addParticle(p);
+		}
+
+		stt.setGridCellsX(gridCells);
+		stt.setGridCellsY(gridCells);
+		stt.setGridSolver(new SimpleSolver());
+		stt.setInterpolator(interpolator);
+
+		return new Simulation(stt);
+	}
+}
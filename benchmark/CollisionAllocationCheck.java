@@ -0,0 +1,81 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package benchmark;
+
+import java.util.Map;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs {@link CollisionBenchmark} for the ScalarMatrixTransformation with
+ * the GC profiler of JMH and fails if a collision allocates memory.
+ *
+ * Launch using:
+ * <pre>
+ * java -cp target/benchmarks.jar benchmark.CollisionAllocationCheck
+ * </pre>
+ * The exit code is 1 if the allocation check fails.
+ */
+public class CollisionAllocationCheck {
+
+	/** Allowed allocation per collision in bytes, leaves room for measurement noise */
+	private static final double MAX_BYTES_PER_COLLISION = 0.5;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(CollisionBenchmark.class.getName() + ".collide")
+				.param("algorithm", "ScalarMatrixTransformation")
+				.addProfiler("gc")
+				.build();
+
+		boolean passed = true;
+		for (RunResult result : new Runner(options).run()) {
+			double bytes = allocationPerOperation(result);
+			System.out.println(String.format("%s: %.3f bytes per collision",
+					result.getParams().getParam("algorithm"), bytes));
+			if (Double.isNaN(bytes) || bytes > MAX_BYTES_PER_COLLISION) {
+				passed = false;
+			}
+		}
+
+		if (!passed) {
+			System.out.println("Allocation check failed.");
+			System.exit(1);
+		}
+		System.out.println("Allocation check passed.");
+	}
+
+	/**
+	 * The normalized allocation rate of the GC profiler. Depending on the
+	 * JMH version its name has a prefix, so only the end is compared.
+	 */
+	private static double allocationPerOperation(RunResult result) {
+		for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+			if (entry.getKey().endsWith("gc.alloc.rate.norm")) {
+				return entry.getValue().getScore();
+			}
+		}
+		return Double.NaN;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import physics.collision.algorithms.CollisionAlgorithm;
+import physics.collision.algorithms.MatrixTransformation;
+import physics.collision.algorithms.ScalarMatrixTransformation;
+import physics.collision.algorithms.SimpleCollision;
+import physics.collision.algorithms.VectorTransformation;
+import physics.collision.util.Pair;
+import physics.force.ConstantForce;
+import physics.force.Force;
+import physics.particles.Particle;
+import physics.particles.ParticleFull;
+import physics.solver.Boris;
+import physics.solver.Solver;
+
+/**
+ * Time of one collision. Every pair of particles overlaps and approaches,
+ * so that every pair is actually resolved. Run with the GC profiler
+ * ("-prof gc") to see the allocation per collision, or use
+ * {@link CollisionAllocationCheck}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+
+	public static final int PAIRS = 1000;
+
+	@Param({"SimpleCollision", "VectorTransformation", "MatrixTransformation", "ScalarMatrixTransformation"})
+	public String algorithm;
+
+	private CollisionAlgorithm collisionAlgorithm;
+
+	private ArrayList<Pair<Particle, Particle>> pairs;
+
+	private ArrayList<Particle> particles;
+
+	private Force force;
+
+	private Solver solver;
+
+	@Setup
+	public void setUp() {
+		collisionAlgorithm = createAlgorithm(algorithm);
+		force = new ConstantForce();
+		solver = new Boris();
+
+		// Fixed seed, so that every run resolves the same collisions
+		Random random = new Random(0);
+		pairs = new ArrayList<Pair<Particle, Particle>>();
+		particles = new ArrayList<Particle>();
+		for (int i = 0; i < PAIRS; i++) {
+			double angle = 2 * Math.PI * random.nextDouble();
+			Particle p1 = createParticle(10 * i, 0, Math.cos(angle), Math.sin(angle));
+			Particle p2 = createParticle(10 * i + 1.5 * Math.cos(angle), 1.5 * Math.sin(angle),
+					-Math.cos(angle), -Math.sin(angle));
+			pairs.add(new Pair<Particle, Particle>(p1, p2));
+			particles.add(p1);
+			particles.add(p2);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public void collide() {
+		collisionAlgorithm.collide(pairs, force, solver, 0.1);
+
+		// Reversing all velocities lets the pairs approach each other again
+		for (int i = 0; i < particles.size(); i++) {
+			Particle p = particles.get(i);
+			p.setVx(-p.getVx());
+			p.setVy(-p.getVy());
+		}
+	}
+
+	private static Particle createParticle(double x, double y, double vx, double vy) {
+		Particle p = new ParticleFull();
+		p.setX(x);
+		p.setY(y);
+		p.setVx(vx);
+		p.setVy(vy);
+		p.setRadius(1);
+		p.setMass(1);
+		return p;
+	}
+
+	static CollisionAlgorithm createAlgorithm(String name) {
+		if (name.equals("SimpleCollision")) {
+			return new SimpleCollision();
+		} else if (name.equals("VectorTransformation")) {
+			return new VectorTransformation();
+		} else if (name.equals("MatrixTransformation")) {
+			return new MatrixTransformation();
+		} else if (name.equals("ScalarMatrixTransformation")) {
+			return new ScalarMatrixTransformation();
+		}
+		throw new IllegalArgumentException("Unknown collision algorithm " + name);
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package benchmark;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import physics.Simulation;
+import physics.grid.ChargeConservingCIC;
+import physics.grid.CloudInCell;
+import physics.grid.ParallelDeposition;
+
+/**
+ * Time of the charge and current deposition onto the grid.
+ * "ParallelCIC" is the replica-based deposition of parallel batch runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpolatorBenchmark {
+
+	@Param({"CloudInCell", "ChargeConservingCIC", "ParallelCIC"})
+	public String interpolator;
+
+	@Param({"1000", "100000"})
+	public int particles;
+
+	@Param({"32", "128"})
+	public int gridCells;
+
+	private Simulation s;
+
+	private ForkJoinPool pool;
+	private ParallelDeposition deposition;
+
+	@Setup
+	public void setUp() {
+		if (interpolator.equals("CloudInCell")) {
+			s = BenchmarkSimulations.create(particles, gridCells, new CloudInCell());
+		} else {
+			s = BenchmarkSimulations.create(particles, gridCells, new ChargeConservingCIC());
+		}
+		if (interpolator.equals("ParallelCIC")) {
+			pool = new ForkJoinPool();
+			deposition = new ParallelDeposition(pool);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	@Benchmark
+	public void interpolateToGrid() {
+		if (deposition != null) {
+			deposition.interpolateToGrid(s.particles, s.grid);
+		} else {
+			s.interpolation.interpolateToGrid(s.particles, s.grid, s.tstep);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import physics.Simulation;
+import physics.fields.PoissonSolver;
+import physics.fields.PoissonSolverFFTPeriodic;
+import physics.fields.PoissonSolverFFTPeriodicParallel;
+
+/**
+ * Time of one field solve. "SimpleSolver" measures the field update of
+ * the grid, the other solvers solve the Poisson equation for a random
+ * charge distribution as in PoissonSolverCalculations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoissonSolverBenchmark {
+
+	@Param({"SimpleSolver", "PoissonSolverFFTPeriodic", "PoissonSolverFFTPeriodicParallel"})
+	public String solver;
+
+	@Param({"1000"})
+	public int particles;
+
+	@Param({"64", "100", "256"})
+	public int gridCells;
+
+	private Simulation s;
+
+	private PoissonSolver poissonSolver;
+
+	@Setup
+	public void setUp() {
+		s = BenchmarkSimulations.create(particles, gridCells);
+
+		// Fixed seed, so that every run solves the same problem
+		Random random = new Random(0);
+		for (int i = 0; i < gridCells; i++) {
+			for (int j = 0; j < gridCells; j++) {
+				s.grid.setRho(i, j, 10 * (random.nextDouble() - 0.5));
+			}
+		}
+
+		if (solver.equals("PoissonSolverFFTPeriodic")) {
+			poissonSolver = new PoissonSolverFFTPeriodic();
+		} else if (solver.equals("PoissonSolverFFTPeriodicParallel")) {
+			poissonSolver = new PoissonSolverFFTPeriodicParallel();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (poissonSolver instanceof PoissonSolverFFTPeriodicParallel) {
+			((PoissonSolverFFTPeriodicParallel) poissonSolver).shutdown();
+		}
+	}
+
+	@Benchmark
+	public void solve() {
+		if (poissonSolver != null) {
+			poissonSolver.solve(s.grid);
+		} else {
+			s.grid.updateFields(s.tstep);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import physics.Simulation;
+import physics.solver.Boris;
+import physics.solver.BorisDamped;
+import physics.solver.Euler;
+import physics.solver.EulerRichardson;
+import physics.solver.LeapFrog;
+import physics.solver.LeapFrogDamped;
+import physics.solver.LeapFrogHalfStep;
+import physics.solver.SemiImplicitEuler;
+import physics.solver.Solver;
+import physics.solver.relativistic.BorisRelativistic;
+import physics.solver.relativistic.LeapFrogRelativistic;
+import physics.solver.relativistic.SemiImplicitEulerRelativistic;
+
+/**
+ * Time of one particle push with every solver offered in the GUI.
+ * The particles are pushed through the particle mover, so the boundary
+ * conditions are included in the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+
+	@Param({"EulerRichardson", "LeapFrog", "LeapFrogDamped", "LeapFrogHalfStep",
+			"Boris", "BorisDamped", "SemiImplicitEuler", "Euler",
+			"LeapFrogRelativistic", "BorisRelativistic", "SemiImplicitEulerRelativistic"})
+	public String solver;
+
+	@Param({"1000", "100000"})
+	public int particles;
+
+	@Param({"32", "128"})
+	public int gridCells;
+
+	private Simulation s;
+
+	@Setup
+	public void setUp() {
+		s = BenchmarkSimulations.create(particles, gridCells);
+		s.turnGridForceOn();
+		s.getParticleMover().setSolver(createSolver(solver, s.getSpeedOfLight()));
+		s.prepareAllParticles();
+	}
+
+	@Benchmark
+	public void push() {
+		s.getParticleMover().push(s.particles, s.f, s.tstep);
+	}
+
+	static Solver createSolver(String name, double c) {
+		if (name.equals("EulerRichardson")) {
+			return new EulerRichardson();
+		} else if (name.equals("LeapFrog")) {
+			return new LeapFrog();
+		} else if (name.equals("LeapFrogDamped")) {
+			return new LeapFrogDamped();
+		} else if (name.equals("LeapFrogHalfStep")) {
+			return new LeapFrogHalfStep();
+		} else if (name.equals("Boris")) {
+			return new Boris();
+		} else if (name.equals("BorisDamped")) {
+			return new BorisDamped();
+		} else if (name.equals("SemiImplicitEuler")) {
+			return new SemiImplicitEuler();
+		} else if (name.equals("Euler")) {
+			return new Euler();
+		} else if (name.equals("LeapFrogRelativistic")) {
+			return new LeapFrogRelativistic(c);
+		} else if (name.equals("BorisRelativistic")) {
+			return new BorisRelativistic(c);
+		} else if (name.equals("SemiImplicitEulerRelativistic")) {
+			return new SemiImplicitEulerRelativistic(c);
+		}
+		throw new IllegalArgumentException("Unknown solver " + name);
+	}
+}
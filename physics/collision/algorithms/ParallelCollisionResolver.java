@@ -0,0 +1,236 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.collision.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import physics.collision.util.Pair;
+import physics.force.Force;
+import physics.particles.Particle;
+import physics.solver.Solver;
+
+/**
+ * Resolves the detected collisions of one step with a CollisionAlgorithm
+ * on several threads.
+ *
+ * The pairs are split into batches in which no particle appears twice. A
+ * pair is put into the batch after the last batch which contains one of
+ * its particles, so every particle takes part in its collisions in the same
+ * order as in the sequential resolution. Hence the result does not depend
+ * on the number of threads and is the same as that of
+ * {@link CollisionAlgorithm#collide} on the whole list. The batches are
+ * resolved one after the other, the pairs of a batch in parallel.
+ *
+ * The collision algorithm must not keep state between pairs. This is
+ * known to hold for SimpleCollision, VectorTransformation,
+ * MatrixTransformation and ScalarMatrixTransformation; other algorithms,
+ * including subclasses of these, are resolved on the calling thread.
+ */
+public class ParallelCollisionResolver {
+
+	/** Batches with fewer pairs are resolved on the calling thread */
+	private static final int MIN_PARALLEL_PAIRS = 64;
+
+	private ForkJoinPool pool;
+
+	private int workers;
+
+	/** Batch of each pair */
+	private int[] batchOf = new int[0];
+
+	/** Pairs of batch b are order[batchStart[b]] to order[batchStart[b + 1] - 1] */
+	private int[] batchStart = new int[1];
+
+	/** Pair indices sorted by batch */
+	private int[] order = new int[0];
+
+	/** Open addressing table from particle to the number of batches it is in */
+	private Particle[] keys = new Particle[0];
+	private int[] levels = new int[0];
+
+	/** 32 minus the number of bits of a table index */
+	private int shift = 32;
+
+	/** Pair lists of the workers, reused between steps */
+	private ArrayList<ArrayList<Pair<Particle, Particle>>> chunks;
+
+	/** Number of batches in the last step */
+	private int batches;
+
+	public ParallelCollisionResolver(ForkJoinPool pool) {
+		this.pool = pool;
+		this.workers = pool.getParallelism();
+		chunks = new ArrayList<ArrayList<Pair<Particle, Particle>>>();
+		for (int w = 0; w < workers; w++) {
+			chunks.add(new ArrayList<Pair<Particle, Particle>>());
+		}
+	}
+
+	public void collide(CollisionAlgorithm algorithm, ArrayList<Pair<Particle, Particle>> pairs,
+			Force f, Solver s, double step) {
+		int n = pairs.size();
+		if (n < MIN_PARALLEL_PAIRS || !isStateless(algorithm)) {
+			batches = (n > 0) ? 1 : 0;
+			algorithm.collide(pairs, f, s, step);
+			return;
+		}
+
+		colour(pairs);
+
+		for (int b = 0; b < batches; b++) {
+			int from = batchStart[b];
+			int to = batchStart[b + 1];
+			int size = to - from;
+			int parts = Math.min(workers, Math.max(1, size / (MIN_PARALLEL_PAIRS / 2)));
+			ChunkTask[] tasks = new ChunkTask[parts];
+			for (int w = 0; w < parts; w++) {
+				ArrayList<Pair<Particle, Particle>> chunk = chunks.get(w);
+				chunk.clear();
+				for (int i = from + size * w / parts; i < from + size * (w + 1) / parts; i++) {
+					chunk.add(pairs.get(order[i]));
+				}
+				tasks[w] = new ChunkTask(algorithm, chunk, f, s, step);
+			}
+			if (parts == 1) {
+				tasks[0].compute();
+			} else {
+				pool.invoke(new InvokeAll(tasks));
+			}
+		}
+
+		for (ArrayList<Pair<Particle, Particle>> chunk : chunks) {
+			chunk.clear();
+		}
+	}
+
+	/** Number of conflict-free batches in the last step. */
+	public int getBatches() {
+		return batches;
+	}
+
+	/** Whether the algorithm is known to resolve pairs independently of each other. */
+	private static boolean isStateless(CollisionAlgorithm algorithm) {
+		Class<?> c = algorithm.getClass();
+		return c == SimpleCollision.class || c == VectorTransformation.class
+				|| c == MatrixTransformation.class || c == ScalarMatrixTransformation.class;
+	}
+
+	/** Assigns each pair to a batch and sorts the pairs by batch. */
+	private void colour(ArrayList<Pair<Particle, Particle>> pairs) {
+		int n = pairs.size();
+		if (batchOf.length < n) {
+			batchOf = new int[n];
+			order = new int[n];
+		}
+		int capacity = Integer.highestOneBit(4 * n - 1) << 1;
+		if (keys.length < capacity) {
+			keys = new Particle[capacity];
+			levels = new int[capacity];
+			shift = 32 - Integer.numberOfTrailingZeros(capacity);
+		} else {
+			Arrays.fill(keys, null);
+		}
+
+		batches = 0;
+		for (int i = 0; i < n; i++) {
+			Pair<Particle, Particle> pair = pairs.get(i);
+			int first = slot(pair.getFirst());
+			int second = slot(pair.getSecond());
+			int batch = Math.max(levels[first], levels[second]);
+			batchOf[i] = batch;
+			levels[first] = batch + 1;
+			levels[second] = batch + 1;
+			batches = Math.max(batches, batch + 1);
+		}
+
+		if (batchStart.length < batches + 1) {
+			batchStart = new int[batches + 1];
+		} else {
+			Arrays.fill(batchStart, 0, batches + 1, 0);
+		}
+		for (int i = 0; i < n; i++) {
+			batchStart[batchOf[i] + 1]++;
+		}
+		for (int b = 0; b < batches; b++) {
+			batchStart[b + 1] += batchStart[b];
+		}
+		// batchStart[b] is used as insertion position and restored afterwards
+		for (int i = 0; i < n; i++) {
+			order[batchStart[batchOf[i]]++] = i;
+		}
+		for (int b = batches; b > 0; b--) {
+			batchStart[b] = batchStart[b - 1];
+		}
+		batchStart[0] = 0;
+	}
+
+	/** Position of the particle in the table, inserted with level 0 if new. */
+	private int slot(Particle p) {
+		int mask = keys.length - 1;
+		// Fibonacci hashing: the high bits of the product are the well mixed ones
+		int i = (System.identityHashCode(p) * 0x9E3779B9) >>> shift;
+		while (keys[i] != null) {
+			if (keys[i] == p) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = p;
+		levels[i] = 0;
+		return i;
+	}
+
+	private static class InvokeAll extends RecursiveAction {
+		private RecursiveAction[] tasks;
+
+		InvokeAll(RecursiveAction[] tasks) {
+			this.tasks = tasks;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+
+	private static class ChunkTask extends RecursiveAction {
+		private CollisionAlgorithm algorithm;
+		private ArrayList<Pair<Particle, Particle>> pairs;
+		private Force f;
+		private Solver s;
+		private double step;
+
+		ChunkTask(CollisionAlgorithm algorithm, ArrayList<Pair<Particle, Particle>> pairs,
+				Force f, Solver s, double step) {
+			this.algorithm = algorithm;
+			this.pairs = pairs;
+			this.f = f;
+			this.s = s;
+			this.step = step;
+		}
+
+		@Override
+		protected void compute() {
+			algorithm.collide(pairs, f, s, step);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.collision.algorithms;
+
+import java.util.ArrayList;
+
+import physics.collision.util.Pair;
+import physics.force.Force;
+import physics.particles.Particle;
+import physics.solver.Solver;
+
+/**
+ * Elastic collision like {@link MatrixTransformation}: the velocities are
+ * rotated into the frame in which the x-axis connects the two centres,
+ * the components along this axis are exchanged as in a one-dimensional
+ * elastic collision and the velocities are rotated back.
+ *
+ * The rotation matrices are written out as scalar products, so that no
+ * object is created per collision. Pairs whose centres move apart are left
+ * alone, so that overlapping particles do not collide again in the next
+ * step. The class keeps no state and can be used by several threads at the
+ * same time.
+ */
+public class ScalarMatrixTransformation extends CollisionAlgorithm {
+
+	public void collide(ArrayList<Pair<Particle, Particle>> pairs, Force f, Solver s, double step) {
+		for (int i = 0; i < pairs.size(); i++) {
+			Pair<Particle, Particle> pair = pairs.get(i);
+			Particle p1 = pair.getFirst();
+			Particle p2 = pair.getSecond();
+
+			double dx = p2.getX() - p1.getX();
+			double dy = p2.getY() - p1.getY();
+			double distance2 = dx * dx + dy * dy;
+			double radii = p1.getRadius() + p2.getRadius();
+			// Only particles which approach each other collide
+			double approach = dx * (p1.getVx() - p2.getVx()) + dy * (p1.getVy() - p2.getVy());
+			if (distance2 <= radii * radii && distance2 > 0 && approach > 0) {
+				s.complete(p1, f, step);
+				s.complete(p2, f, step);
+				doCollision(p1, p2, dx, dy, Math.sqrt(distance2));
+				s.prepare(p1, f, step);
+				s.prepare(p2, f, step);
+			}
+		}
+	}
+
+	private static void doCollision(Particle p1, Particle p2, double dx, double dy, double distance) {
+		// Rotation matrix ((cos, sin), (-sin, cos)) into the frame of the collision
+		double cos = dx / distance;
+		double sin = dy / distance;
+
+		double v1n = cos * p1.getVx() + sin * p1.getVy();
+		double v1t = -sin * p1.getVx() + cos * p1.getVy();
+		double v2n = cos * p2.getVx() + sin * p2.getVy();
+		double v2t = -sin * p2.getVx() + cos * p2.getVy();
+
+		double m1 = p1.getMass();
+		double m2 = p2.getMass();
+		double u1n = (v1n * (m1 - m2) + 2 * m2 * v2n) / (m1 + m2);
+		double u2n = (v2n * (m2 - m1) + 2 * m1 * v1n) / (m1 + m2);
+
+		// Inverse rotation ((cos, -sin), (sin, cos)) back to the simulation frame
+		p1.setVx(cos * u1n - sin * v1t);
+		p1.setVy(sin * u1n + cos * v1t);
+		p2.setVx(cos * u2n - sin * v2t);
+		p2.setVy(sin * u2n + cos * v2t);
+	}
+}
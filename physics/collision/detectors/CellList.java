@@ -0,0 +1,225 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.collision.detectors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import physics.collision.util.Pair;
+import physics.grid.Grid;
+import physics.particles.Particle;
+
+/**
+ * Detector which sorts the particles into the cells of the simulation grid
+ * and compares each particle only with the particles of its own and the
+ * neighbouring cells.
+ *
+ * If the particles are larger than a grid cell, several grid cells are
+ * combined, so that overlapping particles are always in neighbouring
+ * cells. Grid cells which are much larger than the particles are split.
+ * For a roughly uniform density the detection takes linear time.
+ *
+ * The particles are sorted by a counting sort into primitive arrays which
+ * are kept between steps.
+ *
+ * Like the other detectors, pairs are tested by the coordinates of the
+ * particles, which is what the collision algorithms resolve. Particles
+ * which touch only across a periodic boundary are therefore not reported.
+ */
+public class CellList extends Detector {
+
+	private List<Particle> particles;
+
+	private Grid grid;
+
+	private ArrayList<Pair<Particle, Particle>> overlappedPairs = new ArrayList<Pair<Particle, Particle>>();
+
+	/** Maximum number of cells into which one grid cell is split */
+	private static final int MAX_SUBDIVISIONS = 4;
+
+	/** Number of cells of the cell list in each direction */
+	private int cellsX, cellsY, cellsZ;
+
+	/** Size of a cell of the cell list */
+	private double width, height, depth;
+
+	/** Cell of each particle */
+	private int[] cellOf = new int[0];
+
+	/** Particles of cell c are sorted[start[c]] to sorted[start[c + 1] - 1] */
+	private int[] start = new int[1];
+
+	/** Particle indices sorted by cell */
+	private int[] sorted = new int[0];
+
+	/** Number of particle pairs in neighbouring cells in the last step */
+	private int candidatePairs;
+
+	public CellList(List<Particle> particles, Grid grid) {
+		this.particles = particles;
+		this.grid = grid;
+	}
+
+	public void run() {
+		overlappedPairs.clear();
+		candidatePairs = 0;
+
+		int n = particles.size();
+		if (n == 0) {
+			return;
+		}
+		setUpCells();
+		sort(n);
+
+		for (int c = 0; c < cellsX * cellsY * cellsZ; c++) {
+			if (start[c] == start[c + 1]) {
+				continue;
+			}
+			int k = c % cellsZ;
+			int j = (c / cellsZ) % cellsY;
+			int i = c / (cellsZ * cellsY);
+			for (int ni = Math.max(i - 1, 0); ni <= Math.min(i + 1, cellsX - 1); ni++) {
+				for (int nj = Math.max(j - 1, 0); nj <= Math.min(j + 1, cellsY - 1); nj++) {
+					for (int nk = Math.max(k - 1, 0); nk <= Math.min(k + 1, cellsZ - 1); nk++) {
+						int neighbour = (ni * cellsY + nj) * cellsZ + nk;
+						// Every pair of cells is visited once
+						if (neighbour >= c) {
+							compare(c, neighbour);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public ArrayList<Pair<Particle, Particle>> getOverlappedPairs() {
+		return overlappedPairs;
+	}
+
+	/** Number of particle pairs in the same or neighbouring cells in the last step. */
+	public int getCandidatePairs() {
+		return candidatePairs;
+	}
+
+	/** Chooses the cell size from the grid and the largest particle. */
+	private void setUpCells() {
+		double maxRadius = 0;
+		for (int p = 0; p < particles.size(); p++) {
+			maxRadius = Math.max(maxRadius, particles.get(p).getRadius());
+		}
+		width = cellSize(maxRadius, grid.getCellWidth());
+		height = cellSize(maxRadius, grid.getCellHeight());
+		depth = cellSize(maxRadius, grid.getCellDepth());
+		cellsX = numCells(grid.getNumCellsX() * grid.getCellWidth(), width);
+		cellsY = numCells(grid.getNumCellsY() * grid.getCellHeight(), height);
+		cellsZ = numCells(grid.getNumCellsZ() * grid.getCellDepth(), depth);
+	}
+
+	/**
+	 * Combines several grid cells if the largest particle does not fit into
+	 * one, and splits grid cells which are much larger than the particles
+	 * into up to MAX_SUBDIVISIONS parts.
+	 */
+	private static double cellSize(double maxRadius, double gridCellSize) {
+		if (gridCellSize <= 0) {
+			// Flat grids have a single layer of cells
+			return 0;
+		}
+		double diameter = 2 * maxRadius;
+		if (diameter >= gridCellSize) {
+			return Math.ceil(diameter / gridCellSize) * gridCellSize;
+		}
+		int subdivisions = MAX_SUBDIVISIONS;
+		if (diameter > 0) {
+			subdivisions = (int) Math.min(MAX_SUBDIVISIONS, gridCellSize / diameter);
+		}
+		return gridCellSize / subdivisions;
+	}
+
+	private static int numCells(double length, double cellSize) {
+		if (cellSize <= 0) {
+			return 1;
+		}
+		return Math.max(1, (int) Math.ceil(length / cellSize - 1e-9));
+	}
+
+	/** Counting sort of the particles by cell. */
+	private void sort(int n) {
+		int cells = cellsX * cellsY * cellsZ;
+		if (cellOf.length != n) {
+			cellOf = new int[n];
+			sorted = new int[n];
+		}
+		if (start.length != cells + 1) {
+			start = new int[cells + 1];
+		} else {
+			Arrays.fill(start, 0);
+		}
+
+		for (int p = 0; p < n; p++) {
+			Particle par = particles.get(p);
+			int i = clamp((int) Math.floor(par.getX() / width), cellsX);
+			int j = clamp((int) Math.floor(par.getY() / height), cellsY);
+			int k = (depth > 0) ? clamp((int) Math.floor(par.getZ() / depth), cellsZ) : 0;
+			int c = (i * cellsY + j) * cellsZ + k;
+			cellOf[p] = c;
+			start[c + 1]++;
+		}
+		for (int c = 0; c < cells; c++) {
+			start[c + 1] += start[c];
+		}
+		// start[c] is used as insertion position and restored afterwards
+		for (int p = 0; p < n; p++) {
+			sorted[start[cellOf[p]]++] = p;
+		}
+		for (int c = cells; c > 0; c--) {
+			start[c] = start[c - 1];
+		}
+		start[0] = 0;
+	}
+
+	/** Particles outside of the grid are put into the boundary cells. */
+	private static int clamp(int index, int cells) {
+		if (index < 0) {
+			return 0;
+		} else if (index >= cells) {
+			return cells - 1;
+		}
+		return index;
+	}
+
+	/** Compares all particles of cell a with those of cell b. */
+	private void compare(int a, int b) {
+		for (int s = start[a]; s < start[a + 1]; s++) {
+			Particle p = particles.get(sorted[s]);
+			// Within the same cell only the following particles are compared
+			int first = (a == b) ? s + 1 : start[b];
+			for (int t = first; t < start[b + 1]; t++) {
+				Particle q = particles.get(sorted[t]);
+				candidatePairs++;
+				double r = p.getRadius() + q.getRadius();
+				if (Math.abs(p.getX() - q.getX()) <= r && Math.abs(p.getY() - q.getY()) <= r
+						&& Math.abs(p.getZ() - q.getZ()) <= r) {
+					overlappedPairs.add(new Pair<Particle, Particle>(p, q));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.collision.detectors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import physics.collision.util.Pair;
+import physics.particles.Particle;
+
+/**
+ * Sweep and prune along the x-axis which keeps the sorted endpoints of the
+ * particles' bounding boxes between steps.
+ *
+ * The particles move only a little per step, so the endpoints are almost
+ * sorted already and an insertion sort brings them back in order in close
+ * to linear time. The endpoints are kept in primitive arrays: the
+ * coordinate and the particle index times two, plus one for the upper
+ * endpoint.
+ */
+public class IncrementalSweepAndPrune extends Detector {
+
+	private List<Particle> particles;
+
+	private ArrayList<Pair<Particle, Particle>> overlappedPairs = new ArrayList<Pair<Particle, Particle>>();
+
+	/** Coordinates of the sorted endpoints */
+	private double[] value = new double[0];
+
+	/** 2 * particle index for lower endpoints, 2 * particle index + 1 for upper ones */
+	private int[] endpoint = new int[0];
+
+	/** Particles whose interval contains the current position of the sweep */
+	private int[] active = new int[0];
+
+	/** Position of each particle in the active list */
+	private int[] activePosition = new int[0];
+
+	/** Number of particle pairs which overlap along the x-axis in the last step */
+	private int candidatePairs;
+
+	/** Number of endpoint swaps of the insertion sort in the last step */
+	private int swaps;
+
+	/** Whether the particle indices of the endpoints are out of date */
+	private boolean reordered;
+
+	public IncrementalSweepAndPrune(List<Particle> particles) {
+		this.particles = particles;
+	}
+
+	public void run() {
+		overlappedPairs.clear();
+		candidatePairs = 0;
+		swaps = 0;
+
+		int n = particles.size();
+		if (endpoint.length != 2 * n || reordered) {
+			rebuild(n);
+			reordered = false;
+		} else {
+			update();
+			insertionSort();
+		}
+		sweep(n);
+	}
+
+	public ArrayList<Pair<Particle, Particle>> getOverlappedPairs() {
+		return overlappedPairs;
+	}
+
+	/**
+	 * Has to be called after the particles changed their places in the list,
+	 * for example when they are sorted by cell. The endpoints are then
+	 * sorted from scratch in the next step, since the insertion sort would
+	 * take quadratic time.
+	 */
+	public void particlesReordered() {
+		reordered = true;
+	}
+
+	/** Number of pairs whose bounding boxes overlap along the sweep axis in the last step. */
+	public int getCandidatePairs() {
+		return candidatePairs;
+	}
+
+	/** Number of swaps the insertion sort needed in the last step. */
+	public int getSwaps() {
+		return swaps;
+	}
+
+	/** Creates the endpoints of all particles and sorts them from scratch. */
+	private void rebuild(int n) {
+		value = new double[2 * n];
+		endpoint = new int[2 * n];
+		active = new int[n];
+		activePosition = new int[n];
+		for (int e = 0; e < 2 * n; e++) {
+			endpoint[e] = e;
+		}
+		update();
+		mergeSort(new double[2 * n], new int[2 * n], 0, 2 * n);
+	}
+
+	/** Moves the endpoints to the current positions without changing their order. */
+	private void update() {
+		for (int e = 0; e < endpoint.length; e++) {
+			Particle p = particles.get(endpoint[e] >> 1);
+			if ((endpoint[e] & 1) == 0) {
+				value[e] = p.getX() - p.getRadius();
+			} else {
+				value[e] = p.getX() + p.getRadius();
+			}
+		}
+	}
+
+	private void insertionSort() {
+		for (int e = 1; e < value.length; e++) {
+			double v = value[e];
+			int id = endpoint[e];
+			int f = e - 1;
+			while (f >= 0 && value[f] > v) {
+				value[f + 1] = value[f];
+				endpoint[f + 1] = endpoint[f];
+				f--;
+			}
+			swaps += e - 1 - f;
+			value[f + 1] = v;
+			endpoint[f + 1] = id;
+		}
+	}
+
+	/** Sorts the range [from, to) of the endpoints, only used when rebuilding. */
+	private void mergeSort(double[] valueBuffer, int[] endpointBuffer, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(valueBuffer, endpointBuffer, from, middle);
+		mergeSort(valueBuffer, endpointBuffer, middle, to);
+		int a = from;
+		int b = middle;
+		for (int e = from; e < to; e++) {
+			if (b >= to || (a < middle && value[a] <= value[b])) {
+				valueBuffer[e] = value[a];
+				endpointBuffer[e] = endpoint[a++];
+			} else {
+				valueBuffer[e] = value[b];
+				endpointBuffer[e] = endpoint[b++];
+			}
+		}
+		System.arraycopy(valueBuffer, from, value, from, to - from);
+		System.arraycopy(endpointBuffer, from, endpoint, from, to - from);
+	}
+
+	/**
+	 * Walks along the sorted endpoints. Every particle whose lower endpoint
+	 * is reached overlaps along x with all active particles; those pairs
+	 * are reported if their bounding boxes also overlap in y and z.
+	 */
+	private void sweep(int n) {
+		int activeCount = 0;
+		for (int e = 0; e < endpoint.length; e++) {
+			int index = endpoint[e] >> 1;
+			if ((endpoint[e] & 1) == 0) {
+				Particle p = particles.get(index);
+				candidatePairs += activeCount;
+				for (int a = 0; a < activeCount; a++) {
+					Particle q = particles.get(active[a]);
+					double r = p.getRadius() + q.getRadius();
+					if (Math.abs(p.getY() - q.getY()) <= r && Math.abs(p.getZ() - q.getZ()) <= r) {
+						overlappedPairs.add(new Pair<Particle, Particle>(q, p));
+					}
+				}
+				active[activeCount] = index;
+				activePosition[index] = activeCount;
+				activeCount++;
+			} else {
+				// Removes the particle by moving the last active one into its place
+				int position = activePosition[index];
+				int last = active[--activeCount];
+				active[position] = last;
+				activePosition[last] = position;
+			}
+		}
+	}
+}
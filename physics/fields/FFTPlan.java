@@ -0,0 +1,192 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.fields;
+
+/**
+ * Precomputed plan for complex one-dimensional FFTs of a fixed length.
+ *
+ * Powers of two are transformed by an iterative radix-2 algorithm with
+ * tabulated twiddle factors. Other lengths are reduced to a power of two
+ * by Bluestein's chirp-z algorithm, whose chirp and filter are computed
+ * once when the plan is created.
+ *
+ * A plan is immutable and can be shared between threads. Each thread needs
+ * its own {@link Workspace}.
+ */
+public class FFTPlan {
+
+	/** Length of the transform */
+	private int n;
+
+	/** Length of the radix-2 transform, n itself or the Bluestein length */
+	private int m;
+
+	private boolean bluestein;
+
+	/** Bit reversal permutation of length m */
+	private int[] bitreverse;
+
+	/** cos(2 pi k / m) and sin(2 pi k / m) for k < m/2 */
+	private double[] cos, sin;
+
+	/** exp(-i pi k^2 / n) for k < n */
+	private double[] chirpRe, chirpIm;
+
+	/** Radix-2 transform of the conjugate chirp */
+	private double[] filterRe, filterIm;
+
+	public FFTPlan(int n) {
+		this.n = n;
+		bluestein = (n & (n - 1)) != 0;
+		m = bluestein ? Integer.highestOneBit(2 * n - 1) << 1 : n;
+
+		bitreverse = new int[m];
+		int bits = Integer.numberOfTrailingZeros(m);
+		for (int i = 0; i < m; i++) {
+			bitreverse[i] = (bits == 0) ? 0 : Integer.reverse(i) >>> (32 - bits);
+		}
+		cos = new double[m / 2];
+		sin = new double[m / 2];
+		for (int k = 0; k < m / 2; k++) {
+			cos[k] = Math.cos(2 * Math.PI * k / m);
+			sin[k] = Math.sin(2 * Math.PI * k / m);
+		}
+
+		if (bluestein) {
+			chirpRe = new double[n];
+			chirpIm = new double[n];
+			for (int k = 0; k < n; k++) {
+				// k^2 mod 2n keeps the argument small and accurate
+				long square = ((long) k * k) % (2L * n);
+				double angle = Math.PI * square / n;
+				chirpRe[k] = Math.cos(angle);
+				chirpIm[k] = -Math.sin(angle);
+			}
+			filterRe = new double[m];
+			filterIm = new double[m];
+			filterRe[0] = chirpRe[0];
+			filterIm[0] = -chirpIm[0];
+			for (int k = 1; k < n; k++) {
+				filterRe[k] = filterRe[m - k] = chirpRe[k];
+				filterIm[k] = filterIm[m - k] = -chirpIm[k];
+			}
+			radix2(filterRe, filterIm, false);
+		}
+	}
+
+	public int getLength() {
+		return n;
+	}
+
+	/** Creates the scratch storage which one thread needs for transforms with this plan. */
+	public Workspace createWorkspace() {
+		return new Workspace(bluestein ? m : 0);
+	}
+
+	/**
+	 * In-place transform of the first n entries of re and im.
+	 * The forward transform uses exp(-2 pi i j k / n). The inverse transform
+	 * uses exp(+2 pi i j k / n) and is not normalized.
+	 */
+	public void transform(double[] re, double[] im, boolean inverse, Workspace w) {
+		if (!bluestein) {
+			radix2(re, im, inverse);
+			return;
+		}
+
+		// The inverse transform is the conjugate of the forward transform
+		// of the conjugate input.
+		double sign = inverse ? -1 : 1;
+		double[] are = w.re;
+		double[] aim = w.im;
+		for (int k = 0; k < n; k++) {
+			double xre = re[k];
+			double xim = sign * im[k];
+			are[k] = xre * chirpRe[k] - xim * chirpIm[k];
+			aim[k] = xre * chirpIm[k] + xim * chirpRe[k];
+		}
+		for (int k = n; k < m; k++) {
+			are[k] = 0;
+			aim[k] = 0;
+		}
+
+		radix2(are, aim, false);
+		for (int k = 0; k < m; k++) {
+			double r = are[k] * filterRe[k] - aim[k] * filterIm[k];
+			double i = are[k] * filterIm[k] + aim[k] * filterRe[k];
+			are[k] = r;
+			aim[k] = i;
+		}
+		radix2(are, aim, true);
+
+		double scale = 1. / m;
+		for (int k = 0; k < n; k++) {
+			double r = (are[k] * chirpRe[k] - aim[k] * chirpIm[k]) * scale;
+			double i = (are[k] * chirpIm[k] + aim[k] * chirpRe[k]) * scale;
+			re[k] = r;
+			im[k] = sign * i;
+		}
+	}
+
+	/** In-place unnormalized radix-2 transform of length m. */
+	private void radix2(double[] re, double[] im, boolean inverse) {
+		for (int i = 0; i < m; i++) {
+			int j = bitreverse[i];
+			if (j > i) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+
+		double sign = inverse ? 1 : -1;
+		for (int size = 2; size <= m; size <<= 1) {
+			int half = size >> 1;
+			int step = m / size;
+			for (int start = 0; start < m; start += size) {
+				for (int k = 0; k < half; k++) {
+					double wre = cos[k * step];
+					double wim = sign * sin[k * step];
+					int a = start + k;
+					int b = a + half;
+					double tre = re[b] * wre - im[b] * wim;
+					double tim = re[b] * wim + im[b] * wre;
+					re[b] = re[a] - tre;
+					im[b] = im[a] - tim;
+					re[a] += tre;
+					im[a] += tim;
+				}
+			}
+		}
+	}
+
+	/** Scratch storage of one thread. */
+	public static class Workspace {
+		private double[] re;
+		private double[] im;
+
+		private Workspace(int length) {
+			re = new double[length];
+			im = new double[length];
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.fields;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import physics.grid.Grid;
+
+/**
+ * Periodic FFT Poisson solver like {@link PoissonSolverFFTPeriodic} which
+ * keeps its FFT plans, its Green's function and its work buffers between
+ * calls and transforms the rows and columns of the grid on several threads.
+ *
+ * Everything is allocated on the first call and again only when the grid
+ * size changes. The transforms run on the pool of the caller, by default
+ * on the common pool; only a pool created for a given number of threads
+ * belongs to the solver and has to be released by {@link #shutdown()}.
+ */
+public class PoissonSolverFFTPeriodicParallel implements PoissonSolver {
+
+	private ForkJoinPool pool;
+
+	/** Whether the pool has been created by this solver */
+	private boolean ownsPool;
+
+	/** Number of row or column ranges, one per worker */
+	private int workers;
+
+	private int numCellsX, numCellsY;
+	private double cellWidth, cellHeight;
+
+	private FFTPlan planX, planY;
+
+	/** One workspace per worker and direction */
+	private FFTPlan.Workspace[] workspaceX, workspaceY;
+
+	/** Column buffers per worker for the transforms in x-direction */
+	private double[][] columnRe, columnIm;
+
+	/** Charge density and potential in Fourier space, indexed by [i][j] */
+	private double[][] re, im;
+
+	/** 1/k^2 of the discrete Laplacian, indexed by [i][j] */
+	private double[][] green;
+
+	/** Tasks of the workers for the rows and for the columns, reused between calls */
+	private TransformTask[] rowTasks, columnTasks;
+	private InvokeAll rows, columns;
+
+	/** Runs on the common pool. */
+	public PoissonSolverFFTPeriodicParallel() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/** Creates a pool of the given size, which is stopped by {@link #shutdown()}. */
+	public PoissonSolverFFTPeriodicParallel(int threads) {
+		this(new ForkJoinPool(threads));
+		ownsPool = true;
+	}
+
+	/** Runs on the pool of the caller, which stays in charge of it. */
+	public PoissonSolverFFTPeriodicParallel(ForkJoinPool pool) {
+		this.pool = pool;
+		this.workers = pool.getParallelism();
+		rowTasks = new TransformTask[workers];
+		columnTasks = new TransformTask[workers];
+		for (int w = 0; w < workers; w++) {
+			rowTasks[w] = new TransformTask(w, true);
+			columnTasks[w] = new TransformTask(w, false);
+		}
+		rows = new InvokeAll(rowTasks);
+		columns = new InvokeAll(columnTasks);
+	}
+
+	public void solve(Grid g) {
+		prepare(g);
+
+		for (int i = 0; i < numCellsX; i++) {
+			for (int j = 0; j < numCellsY; j++) {
+				re[i][j] = g.getRho(i, j);
+				im[i][j] = 0;
+			}
+		}
+
+		transform(false);
+
+		for (int i = 0; i < numCellsX; i++) {
+			for (int j = 0; j < numCellsY; j++) {
+				re[i][j] *= green[i][j];
+				im[i][j] *= green[i][j];
+			}
+		}
+
+		transform(true);
+
+		double norm = 1. / (numCellsX * numCellsY);
+		for (int i = 0; i < numCellsX; i++) {
+			for (int j = 0; j < numCellsY; j++) {
+				g.setPhi(i, j, re[i][j] * norm);
+			}
+		}
+
+		// Electric field from the potential by central differences
+		for (int i = 0; i < numCellsX; i++) {
+			int left = (i == 0) ? numCellsX - 1 : i - 1;
+			int right = (i == numCellsX - 1) ? 0 : i + 1;
+			for (int j = 0; j < numCellsY; j++) {
+				int down = (j == 0) ? numCellsY - 1 : j - 1;
+				int up = (j == numCellsY - 1) ? 0 : j + 1;
+				g.setEx(i, j, -(re[right][j] - re[left][j]) * norm / (2 * cellWidth));
+				g.setEy(i, j, -(re[i][up] - re[i][down]) * norm / (2 * cellHeight));
+			}
+		}
+	}
+
+	/** Stops the worker threads if the pool has been created by this solver. */
+	public void shutdown() {
+		if (ownsPool) {
+			pool.shutdown();
+		}
+	}
+
+	/** (Re-)creates plans, buffers and Green's function if the grid has changed. */
+	private void prepare(Grid g) {
+		boolean resized = re == null || numCellsX != g.getNumCellsX() || numCellsY != g.getNumCellsY();
+		boolean rescaled = cellWidth != g.getCellWidth() || cellHeight != g.getCellHeight();
+		if (!resized && !rescaled) {
+			return;
+		}
+
+		numCellsX = g.getNumCellsX();
+		numCellsY = g.getNumCellsY();
+		cellWidth = g.getCellWidth();
+		cellHeight = g.getCellHeight();
+
+		if (resized) {
+			planX = new FFTPlan(numCellsX);
+			planY = new FFTPlan(numCellsY);
+			workspaceX = new FFTPlan.Workspace[workers];
+			workspaceY = new FFTPlan.Workspace[workers];
+			columnRe = new double[workers][numCellsX];
+			columnIm = new double[workers][numCellsX];
+			for (int w = 0; w < workers; w++) {
+				workspaceX[w] = planX.createWorkspace();
+				workspaceY[w] = planY.createWorkspace();
+			}
+			re = new double[numCellsX][numCellsY];
+			im = new double[numCellsX][numCellsY];
+			green = new double[numCellsX][numCellsY];
+		}
+
+		for (int i = 0; i < numCellsX; i++) {
+			double kx = (2 - 2 * Math.cos(2 * Math.PI * i / numCellsX)) / (cellWidth * cellWidth);
+			for (int j = 0; j < numCellsY; j++) {
+				double ky = (2 - 2 * Math.cos(2 * Math.PI * j / numCellsY)) / (cellHeight * cellHeight);
+				double k2 = kx + ky;
+				// The mean value of the potential is arbitrary and set to zero
+				green[i][j] = (k2 == 0) ? 0 : 1 / k2;
+			}
+		}
+	}
+
+	/** Two-dimensional transform of re and im: rows first, then columns. */
+	private void transform(boolean inverse) {
+		run(rows, rowTasks, inverse);
+		run(columns, columnTasks, inverse);
+	}
+
+	/** Runs the tasks again, they have to be reinitialized after each run. */
+	private void run(InvokeAll all, TransformTask[] tasks, boolean inverse) {
+		for (TransformTask task : tasks) {
+			task.reinitialize();
+			task.inverse = inverse;
+		}
+		all.reinitialize();
+		pool.invoke(all);
+	}
+
+	/** Transforms the rows (along y) or columns (along x) belonging to worker w. */
+	private void transform(int w, boolean inverse, boolean rows) {
+		if (rows) {
+			int from = numCellsX * w / workers;
+			int to = numCellsX * (w + 1) / workers;
+			for (int i = from; i < to; i++) {
+				planY.transform(re[i], im[i], inverse, workspaceY[w]);
+			}
+		} else {
+			int from = numCellsY * w / workers;
+			int to = numCellsY * (w + 1) / workers;
+			double[] cre = columnRe[w];
+			double[] cim = columnIm[w];
+			for (int j = from; j < to; j++) {
+				for (int i = 0; i < numCellsX; i++) {
+					cre[i] = re[i][j];
+					cim[i] = im[i][j];
+				}
+				planX.transform(cre, cim, inverse, workspaceX[w]);
+				for (int i = 0; i < numCellsX; i++) {
+					re[i][j] = cre[i];
+					im[i][j] = cim[i];
+				}
+			}
+		}
+	}
+
+	private static class InvokeAll extends RecursiveAction {
+		private RecursiveAction[] tasks;
+
+		InvokeAll(RecursiveAction[] tasks) {
+			this.tasks = tasks;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+
+	private class TransformTask extends RecursiveAction {
+		private int w;
+		private boolean inverse;
+		private boolean rows;
+
+		TransformTask(int w, boolean rows) {
+			this.w = w;
+			this.rows = rows;
+		}
+
+		@Override
+		protected void compute() {
+			transform(w, inverse, rows);
+		}
+	}
+}
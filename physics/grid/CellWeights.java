@@ -0,0 +1,139 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.grid;
+
+import java.util.List;
+
+import physics.particles.Particle;
+import physics.particles.ParticleArrays;
+
+/**
+ * Cell and cloud-in-cell weights of every particle, computed once per step
+ * and shared by {@link ParallelDeposition} and {@link FieldGather}, which
+ * then skips computing them again. The interpolators and forces of a
+ * simulation, including the default cloud-in-cell path, do not use them.
+ *
+ * Particle n lies in the cell (i[n], j[n], k[n]) at the relative position
+ * (a[n], b[n], c[n]) within the cell. The cell indices are already wrapped
+ * periodically. The neighbouring cell in x direction is
+ * {@link #next}(i[n], numCellsX), and so on. The weight of the corner
+ * (i, j, k) is (1 - a) * (1 - b) * (1 - c), that of (i + 1, j, k) is
+ * a * (1 - b) * (1 - c).
+ *
+ * The entries are only valid as long as the particles do not move, so the
+ * weights have to be computed again after each push.
+ */
+public class CellWeights {
+
+	public int[] i = new int[0];
+	public int[] j = new int[0];
+	public int[] k = new int[0];
+	public double[] a = new double[0];
+	public double[] b = new double[0];
+	public double[] c = new double[0];
+
+	private int size;
+
+	private int numCellsX, numCellsY, numCellsZ;
+
+	public int size() {
+		return size;
+	}
+
+	public int getNumCellsX() {
+		return numCellsX;
+	}
+
+	public int getNumCellsY() {
+		return numCellsY;
+	}
+
+	public int getNumCellsZ() {
+		return numCellsZ;
+	}
+
+	/**
+	 * Prepares the arrays for n particles on the given grid. The entries
+	 * have to be filled by {@link #update} afterwards.
+	 */
+	public void resize(int n, Grid g) {
+		numCellsX = g.getNumCellsX();
+		numCellsY = g.getNumCellsY();
+		numCellsZ = g.getNumCellsZ();
+		if (i.length < n) {
+			i = new int[n];
+			j = new int[n];
+			k = new int[n];
+			a = new double[n];
+			b = new double[n];
+			c = new double[n];
+		}
+		size = n;
+	}
+
+	/** Computes the weights of all particles. */
+	public void compute(List<Particle> particles, Grid g) {
+		resize(particles.size(), g);
+		update(particles, g, 0, particles.size());
+	}
+
+	/** Computes the weights of all particles of the container. */
+	public void compute(ParticleArrays p, Grid g) {
+		resize(p.size(), g);
+		for (int n = 0; n < p.size(); n++) {
+			set(n, p.x[n], p.y[n], p.z[n], g);
+		}
+	}
+
+	/**
+	 * Computes the weights of the particles [from, to). Different ranges
+	 * can be updated on different threads after {@link #resize}.
+	 */
+	public void update(List<Particle> particles, Grid g, int from, int to) {
+		for (int n = from; n < to; n++) {
+			Particle p = particles.get(n);
+			set(n, p.getX(), p.getY(), p.getZ(), g);
+		}
+	}
+
+	/** Index of the cell following cell i in a periodic grid with n cells. */
+	public static int next(int i, int n) {
+		return (i + 1 == n) ? 0 : i + 1;
+	}
+
+	private void set(int n, double px, double py, double pz, Grid g) {
+		double x = px / g.getCellWidth();
+		double y = py / g.getCellHeight();
+		double z = (numCellsZ > 1) ? pz / g.getCellDepth() : 0;
+		int ci = (int) Math.floor(x);
+		int cj = (int) Math.floor(y);
+		int ck = (int) Math.floor(z);
+		a[n] = x - ci;
+		b[n] = y - cj;
+		c[n] = z - ck;
+		i[n] = wrap(ci, numCellsX);
+		j[n] = wrap(cj, numCellsY);
+		k[n] = wrap(ck, numCellsZ);
+	}
+
+	private static int wrap(int i, int n) {
+		i %= n;
+		return (i < 0) ? i + n : i;
+	}
+}
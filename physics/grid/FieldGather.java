@@ -0,0 +1,89 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.grid;
+
+import physics.particles.ParticleArrays;
+
+/**
+ * Interpolates the electric and magnetic field of the grid to the
+ * particles of a {@link ParticleArrays} container, using the same
+ * cloud-in-cell weighting with periodic wrap-around as
+ * {@link ParallelDeposition}.
+ *
+ * The fields are read from the grid at the corners of each particle's
+ * cell, so that no copy of the grid is made. The cells and weights of the
+ * particles are taken from {@link CellWeights}.
+ */
+public class FieldGather {
+
+	/** Weights used if none are passed in */
+	private CellWeights weights = new CellWeights();
+
+	/** Fills the field columns ex ... bz of the particles. */
+	public void gather(ParticleArrays p, Grid g) {
+		weights.compute(p, g);
+		gather(p, g, weights);
+	}
+
+	/**
+	 * Fills the field columns ex ... bz of the particles with weights which
+	 * have already been computed for their current positions, e.g. during
+	 * the deposition.
+	 */
+	public void gather(ParticleArrays p, Grid g, CellWeights w) {
+		int numCellsX = g.getNumCellsX();
+		int numCellsY = g.getNumCellsY();
+		int numCellsZ = g.getNumCellsZ();
+
+		for (int n = 0; n < p.size(); n++) {
+			int i = w.i[n];
+			int j = w.j[n];
+			int k = w.k[n];
+			double a = w.a[n];
+			double b = w.b[n];
+			double c = w.c[n];
+			int i2 = CellWeights.next(i, numCellsX);
+			int j2 = CellWeights.next(j, numCellsY);
+			int k2 = CellWeights.next(k, numCellsZ);
+
+			double sumex = 0, sumey = 0, sumez = 0;
+			double sumbx = 0, sumby = 0, sumbz = 0;
+			for (int corner = 0; corner < 8; corner++) {
+				double weight = ((corner & 4) == 0 ? 1 - a : a)
+						* ((corner & 2) == 0 ? 1 - b : b)
+						* ((corner & 1) == 0 ? 1 - c : c);
+				int ci = (corner & 4) == 0 ? i : i2;
+				int cj = (corner & 2) == 0 ? j : j2;
+				int ck = (corner & 1) == 0 ? k : k2;
+				sumex += g.getEx(ci, cj, ck) * weight;
+				sumey += g.getEy(ci, cj, ck) * weight;
+				sumez += g.getEz(ci, cj, ck) * weight;
+				sumbx += g.getBx(ci, cj, ck) * weight;
+				sumby += g.getBy(ci, cj, ck) * weight;
+				sumbz += g.getBz(ci, cj, ck) * weight;
+			}
+			p.ex[n] = sumex;
+			p.ey[n] = sumey;
+			p.ez[n] = sumez;
+			p.bx[n] = sumbx;
+			p.by[n] = sumby;
+			p.bz[n] = sumbz;
+		}
+	}
+}
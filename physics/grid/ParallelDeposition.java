@@ -0,0 +1,239 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.grid;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import physics.particles.Particle;
+
+/**
+ * Deposits charge and current of all particles onto the grid on several
+ * threads, using cloud-in-cell weighting with periodic wrap-around.
+ *
+ * The weights are the node-centred ones of {@link CloudInCell}, so this
+ * class replaces only that interpolator. Like the interpolators it
+ * replaces the current and charge density which the grid held before.
+ *
+ * Every worker deposits a contiguous range of particles into its own
+ * replica of the Jx, Jy, Jz and rho arrays. Afterwards the replicas are
+ * summed cell range by cell range and written to the grid, so no two
+ * threads ever write to the same memory location. The replicas take
+ * workers * cells * 4 doubles, e.g. 4 GB for 8 workers on a 256^3 grid.
+ *
+ * The cells and weights of the particles are stored in {@link CellWeights},
+ * so that they can be reused to gather the fields at the same positions.
+ */
+public class ParallelDeposition {
+
+	private ForkJoinPool pool;
+
+	/** Number of replicas, one per worker */
+	private int workers;
+
+	private int numCellsX, numCellsY, numCellsZ;
+
+	/** Weights of the last deposition */
+	private CellWeights weights = new CellWeights();
+
+	/** Replicas indexed by [worker][cell] with cell = (i * numCellsY + j) * numCellsZ + k */
+	private double[][] jx, jy, jz, rho;
+
+	public ParallelDeposition(ForkJoinPool pool) {
+		this.pool = pool;
+		this.workers = pool.getParallelism();
+	}
+
+	/**
+	 * Replaces the current and charge density of the grid by the
+	 * contribution of the given particles.
+	 */
+	public void interpolateToGrid(List<Particle> particles, Grid g) {
+		allocate(g);
+		weights.resize(particles.size(), g);
+
+		int n = particles.size();
+		DepositTask[] deposit = new DepositTask[workers];
+		for (int w = 0; w < workers; w++) {
+			deposit[w] = new DepositTask(particles, g, w,
+					(int) ((long) n * w / workers), (int) ((long) n * (w + 1) / workers));
+		}
+		pool.invoke(new InvokeAll(deposit));
+
+		int cells = numCellsX * numCellsY * numCellsZ;
+		ReduceTask[] reduce = new ReduceTask[workers];
+		for (int w = 0; w < workers; w++) {
+			reduce[w] = new ReduceTask(g,
+					(int) ((long) cells * w / workers), (int) ((long) cells * (w + 1) / workers));
+		}
+		pool.invoke(new InvokeAll(reduce));
+	}
+
+	/**
+	 * Cells and weights of the particles in the last deposition. They stay
+	 * valid until the particles move again.
+	 */
+	public CellWeights getWeights() {
+		return weights;
+	}
+
+	private void allocate(Grid g) {
+		if (jx == null || numCellsX != g.getNumCellsX() || numCellsY != g.getNumCellsY()
+				|| numCellsZ != g.getNumCellsZ()) {
+			numCellsX = g.getNumCellsX();
+			numCellsY = g.getNumCellsY();
+			numCellsZ = g.getNumCellsZ();
+			int cells = numCellsX * numCellsY * numCellsZ;
+			jx = new double[workers][cells];
+			jy = new double[workers][cells];
+			jz = new double[workers][cells];
+			rho = new double[workers][cells];
+		}
+	}
+
+	private int cell(int i, int j, int k) {
+		return (i * numCellsY + j) * numCellsZ + k;
+	}
+
+	/** Deposits particles [from, to) into replica w */
+	private void deposit(List<Particle> particles, Grid g, int w, int from, int to) {
+		double[] jx = this.jx[w];
+		double[] jy = this.jy[w];
+		double[] jz = this.jz[w];
+		double[] rho = this.rho[w];
+		weights.update(particles, g, from, to);
+		int[] wi = weights.i;
+		int[] wj = weights.j;
+		int[] wk = weights.k;
+		double[] wa = weights.a;
+		double[] wb = weights.b;
+		double[] wc = weights.c;
+
+		for (int n = from; n < to; n++) {
+			Particle p = particles.get(n);
+
+			int i = wi[n];
+			int j = wj[n];
+			int k = wk[n];
+			double a = wa[n];
+			double b = wb[n];
+			double c = wc[n];
+			int i2 = CellWeights.next(i, numCellsX);
+			int j2 = CellWeights.next(j, numCellsY);
+			int k2 = CellWeights.next(k, numCellsZ);
+
+			double q = p.getCharge();
+			double qvx = q * p.getVx();
+			double qvy = q * p.getVy();
+			double qvz = q * p.getVz();
+
+			for (int corner = 0; corner < 8; corner++) {
+				double weight = ((corner & 4) == 0 ? 1 - a : a)
+						* ((corner & 2) == 0 ? 1 - b : b)
+						* ((corner & 1) == 0 ? 1 - c : c);
+				if (weight == 0) {
+					continue;
+				}
+				int index = cell((corner & 4) == 0 ? i : i2,
+						(corner & 2) == 0 ? j : j2,
+						(corner & 1) == 0 ? k : k2);
+				jx[index] += qvx * weight;
+				jy[index] += qvy * weight;
+				jz[index] += qvz * weight;
+				rho[index] += q * weight;
+			}
+		}
+	}
+
+	/** Sums all replicas for cells [from, to), writes them to the grid and clears the replicas */
+	private void reduce(Grid g, int from, int to) {
+		for (int index = from; index < to; index++) {
+			double sumjx = 0;
+			double sumjy = 0;
+			double sumjz = 0;
+			double sumrho = 0;
+			for (int w = 0; w < workers; w++) {
+				sumjx += jx[w][index];
+				sumjy += jy[w][index];
+				sumjz += jz[w][index];
+				sumrho += rho[w][index];
+				jx[w][index] = 0;
+				jy[w][index] = 0;
+				jz[w][index] = 0;
+				rho[w][index] = 0;
+			}
+			int k = index % numCellsZ;
+			int j = (index / numCellsZ) % numCellsY;
+			int i = index / (numCellsZ * numCellsY);
+			g.setJx(i, j, k, sumjx);
+			g.setJy(i, j, k, sumjy);
+			g.setJz(i, j, k, sumjz);
+			g.setRho(i, j, k, sumrho);
+		}
+	}
+
+	private static class InvokeAll extends RecursiveAction {
+		private RecursiveAction[] tasks;
+
+		InvokeAll(RecursiveAction[] tasks) {
+			this.tasks = tasks;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+
+	private class DepositTask extends RecursiveAction {
+		private List<Particle> particles;
+		private Grid g;
+		private int w, from, to;
+
+		DepositTask(List<Particle> particles, Grid g, int w, int from, int to) {
+			this.particles = particles;
+			this.g = g;
+			this.w = w;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			deposit(particles, g, w, from, to);
+		}
+	}
+
+	private class ReduceTask extends RecursiveAction {
+		private Grid g;
+		private int from, to;
+
+		ReduceTask(Grid g, int from, int to) {
+			this.g = g;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			reduce(g, from, to);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.grid;
+
+import java.util.Arrays;
+import java.util.List;
+
+import physics.particles.Particle;
+
+/**
+ * Reorders a particle list by grid cell, so that particles which deposit
+ * into and gather from the same cells are next to each other in memory.
+ *
+ * The cells are either visited in the order of the grid arrays
+ * (i * numCellsY + j) * numCellsZ + k, or along a Morton (Z-order) curve,
+ * which also keeps neighbouring cells in the other directions close
+ * together. In both cases the particles are sorted by a stable counting
+ * sort over the cells in linear time.
+ */
+public class ParticleSorter {
+
+	/** Cells in the order of the grid arrays */
+	public static final int CELL_ORDER = 0;
+
+	/** Cells along a Morton curve */
+	public static final int MORTON_ORDER = 1;
+
+	private int order;
+
+	private int numCellsX, numCellsY, numCellsZ;
+
+	/** Position of each cell in the sorted order */
+	private int[] rank = new int[0];
+
+	/** Rank of the cell of each particle */
+	private int[] keyOf = new int[0];
+
+	/** Particles of rank r start at start[r] */
+	private int[] start = new int[1];
+
+	private Particle[] sorted = new Particle[0];
+
+	public ParticleSorter(int order) {
+		this.order = order;
+	}
+
+	public int getOrder() {
+		return order;
+	}
+
+	/** Sorts the particles in place by the cell in which they lie. */
+	public void sort(List<Particle> particles, Grid g) {
+		int n = particles.size();
+		if (n == 0) {
+			return;
+		}
+		setUpRanks(g);
+		int cells = rank.length;
+		if (keyOf.length < n) {
+			keyOf = new int[n];
+			sorted = new Particle[n];
+		}
+		if (start.length != cells + 1) {
+			start = new int[cells + 1];
+		} else {
+			Arrays.fill(start, 0);
+		}
+
+		double cellwidth = g.getCellWidth();
+		double cellheight = g.getCellHeight();
+		double celldepth = g.getCellDepth();
+		for (int p = 0; p < n; p++) {
+			Particle par = particles.get(p);
+			int i = wrap((int) Math.floor(par.getX() / cellwidth), numCellsX);
+			int j = wrap((int) Math.floor(par.getY() / cellheight), numCellsY);
+			int k = (numCellsZ > 1) ? wrap((int) Math.floor(par.getZ() / celldepth), numCellsZ) : 0;
+			int key = rank[(i * numCellsY + j) * numCellsZ + k];
+			keyOf[p] = key;
+			start[key + 1]++;
+		}
+		for (int r = 0; r < cells; r++) {
+			start[r + 1] += start[r];
+		}
+		for (int p = 0; p < n; p++) {
+			sorted[start[keyOf[p]]++] = particles.get(p);
+		}
+		for (int p = 0; p < n; p++) {
+			particles.set(p, sorted[p]);
+			sorted[p] = null;
+		}
+	}
+
+	/** Computes the position of each cell in the sorted order if the grid has changed. */
+	private void setUpRanks(Grid g) {
+		int cells = g.getNumCellsX() * g.getNumCellsY() * g.getNumCellsZ();
+		if (rank.length == cells && numCellsX == g.getNumCellsX() && numCellsY == g.getNumCellsY()
+				&& numCellsZ == g.getNumCellsZ()) {
+			return;
+		}
+		numCellsX = g.getNumCellsX();
+		numCellsY = g.getNumCellsY();
+		numCellsZ = g.getNumCellsZ();
+		rank = new int[cells];
+		for (int c = 0; c < cells; c++) {
+			rank[c] = c;
+		}
+		if (order == MORTON_ORDER) {
+			// Sort the cells by their Morton code; the codes are unique
+			long[] codes = new long[cells];
+			for (int i = 0; i < numCellsX; i++) {
+				for (int j = 0; j < numCellsY; j++) {
+					for (int k = 0; k < numCellsZ; k++) {
+						int c = (i * numCellsY + j) * numCellsZ + k;
+						codes[c] = (morton(i, j, k) << 32) | c;
+					}
+				}
+			}
+			Arrays.sort(codes);
+			for (int r = 0; r < cells; r++) {
+				rank[(int) codes[r]] = r;
+			}
+		}
+	}
+
+	/** Interleaves the lowest 10 bits of i, j and k. */
+	private static long morton(int i, int j, int k) {
+		return spread(i) << 2 | spread(j) << 1 | spread(k);
+	}
+
+	private static long spread(int v) {
+		long x = v & 0x3FF;
+		x = (x | x << 16) & 0x030000FFL;
+		x = (x | x << 8) & 0x0300F00FL;
+		x = (x | x << 4) & 0x030C30C3L;
+		x = (x | x << 2) & 0x09249249L;
+		return x;
+	}
+
+	private static int wrap(int i, int n) {
+		i %= n;
+		return (i < 0) ? i + n : i;
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.grid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import physics.particles.Particle;
+import physics.particles.ParticleArrays;
+
+/**
+ * Rectangular block of grid cells of a {@link TiledDomain} together with
+ * the particles inside it.
+ *
+ * The tile keeps its own copy of the fields and its own current and charge
+ * density, surrounded by GUARD layers of cells which overlap the
+ * neighbouring tiles. Particles are gathered from and deposited to these
+ * local arrays only, so the tiles of a domain can be processed by
+ * different threads.
+ *
+ * Local cell (i, j, k) is stored at (i * sizeY + j) * sizeZ + k, where the
+ * first owned cell has the local indices (GUARD, GUARD, GUARD). Like the
+ * columns of {@link ParticleArrays}, the local arrays are public so that
+ * they can be exchanged with other processes directly.
+ */
+public class Tile {
+
+	/** Number of guard cells on each side */
+	public static final int GUARD = 1;
+
+	/** First owned cell in grid indices */
+	public final int x0, y0, z0;
+
+	/** Number of owned cells */
+	public final int nx, ny, nz;
+
+	/** Number of cells including the guard cells */
+	public final int sizeX, sizeY, sizeZ;
+
+	public double[] ex, ey, ez, bx, by, bz;
+	public double[] jx, jy, jz, rho;
+
+	/** Cell in x direction of the whole grid at which the grids passed in start, see {@link #useLocalGrid()} */
+	private int gridOffsetX = 0;
+
+	/** The particles in this tile */
+	public final ParticleArrays particles = new ParticleArrays();
+
+	/** Particle object of each entry of particles */
+	public final ArrayList<Particle> objects = new ArrayList<Particle>();
+
+	/** Particles which have left the tile in the last push */
+	public final ParticleArrays outgoing = new ParticleArrays();
+	public final ArrayList<Particle> outgoingObjects = new ArrayList<Particle>();
+
+	/** Local index of the lower corner of the cell of each particle and its position within it */
+	private int[] cell = new int[0];
+	private double[] a = new double[0];
+	private double[] b = new double[0];
+	private double[] c = new double[0];
+
+	public Tile(int x0, int y0, int z0, int nx, int ny, int nz) {
+		this.x0 = x0;
+		this.y0 = y0;
+		this.z0 = z0;
+		this.nx = nx;
+		this.ny = ny;
+		this.nz = nz;
+		sizeX = nx + 2 * GUARD;
+		sizeY = ny + 2 * GUARD;
+		sizeZ = nz + 2 * GUARD;
+		int cells = sizeX * sizeY * sizeZ;
+		ex = new double[cells];
+		ey = new double[cells];
+		ez = new double[cells];
+		bx = new double[cells];
+		by = new double[cells];
+		bz = new double[cells];
+		jx = new double[cells];
+		jy = new double[cells];
+		jz = new double[cells];
+		rho = new double[cells];
+	}
+
+	/**
+	 * From now on the grids passed to this tile hold only the tile's cells
+	 * and guard cells in x direction, starting with the lower guard layer,
+	 * and all cells in y and z direction. The particles keep their
+	 * positions in the whole simulation box.
+	 */
+	public void useLocalGrid() {
+		gridOffsetX = x0 - GUARD;
+	}
+
+	/** Number of cells including the guard cells. */
+	public int getNumCells() {
+		return sizeX * sizeY * sizeZ;
+	}
+
+	/** Number of values of one layer of cells in x direction, including the guard cells. */
+	public int getLayerSize() {
+		return sizeY * sizeZ;
+	}
+
+	public int local(int i, int j, int k) {
+		return (i * sizeY + j) * sizeZ + k;
+	}
+
+	public void add(ParticleArrays from, int i, Particle object) {
+		particles.add(from, i);
+		objects.add(object);
+	}
+
+	/** Moves entry i to the outgoing particles. */
+	public void leave(int i) {
+		outgoing.add(particles, i);
+		outgoingObjects.add(objects.get(i));
+		particles.remove(i);
+		int last = objects.size() - 1;
+		objects.set(i, objects.get(last));
+		objects.remove(last);
+	}
+
+	/** Computes the local cell of every particle. */
+	public void locate(Grid g) {
+		int n = particles.size();
+		if (cell.length < n) {
+			cell = new int[particles.capacity()];
+			a = new double[particles.capacity()];
+			b = new double[particles.capacity()];
+			c = new double[particles.capacity()];
+		}
+		boolean flat = g.getNumCellsZ() == 1;
+		for (int p = 0; p < n; p++) {
+			double x = particles.x[p] / g.getCellWidth();
+			double y = particles.y[p] / g.getCellHeight();
+			double z = flat ? z0 : particles.z[p] / g.getCellDepth();
+			int i = clamp((int) Math.floor(x), x0, nx);
+			int j = clamp((int) Math.floor(y), y0, ny);
+			int k = clamp((int) Math.floor(z), z0, nz);
+			a[p] = x - i;
+			b[p] = y - j;
+			c[p] = z - k;
+			cell[p] = local(i - x0 + GUARD, j - y0 + GUARD, k - z0 + GUARD);
+		}
+	}
+
+	/**
+	 * Rounding may put a particle on the boundary into the next cell, it
+	 * is kept in the tile's own cells.
+	 */
+	private static int clamp(int i, int first, int n) {
+		if (i < first) {
+			return first;
+		} else if (i >= first + n) {
+			return first + n - 1;
+		}
+		return i;
+	}
+
+	/** Deposits the particles into the local current and charge density. */
+	public void deposit() {
+		Arrays.fill(jx, 0);
+		Arrays.fill(jy, 0);
+		Arrays.fill(jz, 0);
+		Arrays.fill(rho, 0);
+		int di = sizeY * sizeZ;
+		int dj = sizeZ;
+		for (int p = 0; p < particles.size(); p++) {
+			double q = particles.charge[p];
+			double qvx = q * particles.vx[p];
+			double qvy = q * particles.vy[p];
+			double qvz = q * particles.vz[p];
+			for (int corner = 0; corner < 8; corner++) {
+				double weight = ((corner & 4) == 0 ? 1 - a[p] : a[p])
+						* ((corner & 2) == 0 ? 1 - b[p] : b[p])
+						* ((corner & 1) == 0 ? 1 - c[p] : c[p]);
+				if (weight == 0) {
+					continue;
+				}
+				int index = cell[p] + ((corner & 4) == 0 ? 0 : di)
+						+ ((corner & 2) == 0 ? 0 : dj) + (corner & 1);
+				jx[index] += qvx * weight;
+				jy[index] += qvy * weight;
+				jz[index] += qvz * weight;
+				rho[index] += q * weight;
+			}
+		}
+	}
+
+	/** Interpolates the local fields to the particles. */
+	public void gather() {
+		int di = sizeY * sizeZ;
+		int dj = sizeZ;
+		for (int p = 0; p < particles.size(); p++) {
+			double sumex = 0, sumey = 0, sumez = 0;
+			double sumbx = 0, sumby = 0, sumbz = 0;
+			for (int corner = 0; corner < 8; corner++) {
+				double weight = ((corner & 4) == 0 ? 1 - a[p] : a[p])
+						* ((corner & 2) == 0 ? 1 - b[p] : b[p])
+						* ((corner & 1) == 0 ? 1 - c[p] : c[p]);
+				int index = cell[p] + ((corner & 4) == 0 ? 0 : di)
+						+ ((corner & 2) == 0 ? 0 : dj) + (corner & 1);
+				sumex += ex[index] * weight;
+				sumey += ey[index] * weight;
+				sumez += ez[index] * weight;
+				sumbx += bx[index] * weight;
+				sumby += by[index] * weight;
+				sumbz += bz[index] * weight;
+			}
+			particles.ex[p] = sumex;
+			particles.ey[p] = sumey;
+			particles.ez[p] = sumez;
+			particles.bx[p] = sumbx;
+			particles.by[p] = sumby;
+			particles.bz[p] = sumbz;
+		}
+	}
+
+	/** Whether grid cell i lies in this tile in x direction. */
+	public boolean ownsX(int i) {
+		return i >= x0 && i < x0 + nx;
+	}
+
+	/** Copies the fields of the tile's cells and guard cells from the grid. */
+	public void copyFields(Grid g) {
+		for (int i = 0; i < sizeX; i++) {
+			int gi = gridX(g, i);
+			for (int j = 0; j < sizeY; j++) {
+				int gj = wrap(y0 + j - GUARD, g.getNumCellsY());
+				for (int k = 0; k < sizeZ; k++) {
+					int gk = wrap(z0 + k - GUARD, g.getNumCellsZ());
+					int index = local(i, j, k);
+					ex[index] = g.getEx(gi, gj, gk);
+					ey[index] = g.getEy(gi, gj, gk);
+					ez[index] = g.getEz(gi, gj, gk);
+					bx[index] = g.getBx(gi, gj, gk);
+					by[index] = g.getBy(gi, gj, gk);
+					bz[index] = g.getBz(gi, gj, gk);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the fields of the local layer i in x direction to the grid,
+	 * e.g. after they have been received from a neighbour.
+	 */
+	public void writeFieldLayer(Grid g, int i) {
+		int gi = gridX(g, i);
+		for (int j = 0; j < ny; j++) {
+			for (int k = 0; k < nz; k++) {
+				int index = local(i, j + GUARD, k + GUARD);
+				g.setEx(gi, y0 + j, z0 + k, ex[index]);
+				g.setEy(gi, y0 + j, z0 + k, ey[index]);
+				g.setEz(gi, y0 + j, z0 + k, ez[index]);
+				g.setBx(gi, y0 + j, z0 + k, bx[index]);
+				g.setBy(gi, y0 + j, z0 + k, by[index]);
+				g.setBz(gi, y0 + j, z0 + k, bz[index]);
+			}
+		}
+	}
+
+	/**
+	 * Writes the current and charge density of the tile's own cells to the
+	 * grid. Tiles which do not overlap can do this at the same time.
+	 */
+	public void writeCurrents(Grid g) {
+		for (int i = 0; i < nx; i++) {
+			int gi = gridX(g, i + GUARD);
+			for (int j = 0; j < ny; j++) {
+				for (int k = 0; k < nz; k++) {
+					int index = local(i + GUARD, j + GUARD, k + GUARD);
+					g.setJx(gi, y0 + j, z0 + k, jx[index]);
+					g.setJy(gi, y0 + j, z0 + k, jy[index]);
+					g.setJz(gi, y0 + j, z0 + k, jz[index]);
+					g.setRho(gi, y0 + j, z0 + k, rho[index]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the current and charge density of the guard cells to the cells
+	 * of the neighbours, after all tiles have written their own cells.
+	 */
+	public void addGuardCurrents(Grid g) {
+		for (int i = 0; i < sizeX; i++) {
+			for (int j = 0; j < sizeY; j++) {
+				boolean inner = isInner(i, nx) && isInner(j, ny);
+				for (int k = 0; k < sizeZ; k++) {
+					if (inner && k == GUARD) {
+						k = GUARD + nz - 1;
+						continue;
+					}
+					int index = local(i, j, k);
+					int gi = gridX(g, i);
+					int gj = wrap(y0 + j - GUARD, g.getNumCellsY());
+					int gk = wrap(z0 + k - GUARD, g.getNumCellsZ());
+					g.addJx(gi, gj, gk, jx[index]);
+					g.addJy(gi, gj, gk, jy[index]);
+					g.addJz(gi, gj, gk, jz[index]);
+					g.addRho(gi, gj, gk, rho[index]);
+				}
+			}
+		}
+	}
+
+	/** Grid index in x direction of local layer i. */
+	private int gridX(Grid g, int i) {
+		return wrap(x0 - gridOffsetX + i - GUARD, g.getNumCellsX());
+	}
+
+	private static boolean isInner(int i, int n) {
+		return i >= GUARD && i < GUARD + n;
+	}
+
+	private static int wrap(int i, int n) {
+		i %= n;
+		return (i < 0) ? i + n : i;
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.grid;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import physics.movement.boundary.ParticleBoundaryType;
+import physics.particles.Particle;
+import physics.particles.ParticleArrays;
+import physics.solver.BorisVector;
+
+/**
+ * Splits the grid into rectangular tiles which are processed by one worker
+ * each.
+ *
+ * Every tile owns the particles inside its cells and keeps a local copy of
+ * the fields and a local current and charge density with guard cells (see
+ * {@link Tile}). One step of the particles consists of
+ * <ol>
+ * <li>{@link #push}: all tiles push their particles with the Boris scheme
+ * in the fields gathered at the end of the previous step, then particles
+ * which have crossed a tile boundary migrate to their new tile,</li>
+ * <li>{@link #deposit}: all tiles deposit into their local arrays, write
+ * their own cells to the grid and add their guard cells to the cells of
+ * the neighbours,</li>
+ * <li>{@link #gather}: after the field solve every tile copies its cells
+ * and guard cells from the grid and interpolates them to its particles.</li>
+ * </ol>
+ * The field solve itself is done by the grid for the whole domain.
+ *
+ * The boundaries of the domain are periodic unless hard walls are
+ * requested. The particle objects are only updated by {@link #store}.
+ *
+ * The tiles use neither the solver, the forces nor the interpolator of a
+ * simulation, but compute the non-relativistic Boris scheme in the grid
+ * fields with cloud-in-cell weights. The caller has to make sure that the
+ * simulation is set up in the same way.
+ */
+public class TiledDomain {
+
+	private Grid grid;
+
+	private ForkJoinPool pool;
+
+	private Tile[] tiles;
+
+	/** Tile index of each cell column in x, y and z direction */
+	private int[] tileX, tileY, tileZ;
+
+	private int tilesX, tilesY, tilesZ;
+
+	private BorisVector boris = new BorisVector();
+
+	/** Number of particles which changed their tile in the last push */
+	private int migrated;
+
+	/**
+	 * Splits the grid into tilesX * tilesY * tilesZ tiles of nearly equal
+	 * size. There are at most as many tiles in one direction as cells.
+	 */
+	public TiledDomain(Grid grid, int tilesX, int tilesY, int tilesZ, ForkJoinPool pool) {
+		this.grid = grid;
+		this.pool = pool;
+		this.tilesX = Math.max(1, Math.min(tilesX, grid.getNumCellsX()));
+		this.tilesY = Math.max(1, Math.min(tilesY, grid.getNumCellsY()));
+		this.tilesZ = Math.max(1, Math.min(tilesZ, grid.getNumCellsZ()));
+		tileX = split(grid.getNumCellsX(), this.tilesX);
+		tileY = split(grid.getNumCellsY(), this.tilesY);
+		tileZ = split(grid.getNumCellsZ(), this.tilesZ);
+
+		tiles = new Tile[this.tilesX * this.tilesY * this.tilesZ];
+		for (int ti = 0; ti < this.tilesX; ti++) {
+			for (int tj = 0; tj < this.tilesY; tj++) {
+				for (int tk = 0; tk < this.tilesZ; tk++) {
+					int x0 = first(tileX, ti);
+					int y0 = first(tileY, tj);
+					int z0 = first(tileZ, tk);
+					tiles[(ti * this.tilesY + tj) * this.tilesZ + tk] = new Tile(x0, y0, z0,
+							first(tileX, ti + 1) - x0, first(tileY, tj + 1) - y0,
+							first(tileZ, tk + 1) - z0);
+				}
+			}
+		}
+	}
+
+	public int getNumTiles() {
+		return tiles.length;
+	}
+
+	/** Number of particles in tile t. */
+	public int getNumParticles(int t) {
+		return tiles[t].particles.size();
+	}
+
+	/** Number of particles which changed their tile in the last push. */
+	public int getMigrated() {
+		return migrated;
+	}
+
+	/**
+	 * Distributes the particles among the tiles and gathers the fields for
+	 * them. Replaces all particles which have been distributed before.
+	 */
+	public void distribute(List<Particle> particles) {
+		for (Tile tile : tiles) {
+			tile.particles.clear();
+			tile.objects.clear();
+		}
+		ParticleArrays arrays = new ParticleArrays(particles);
+		arrays.wrap(getWidth(), getHeight(), (grid.getNumCellsZ() > 1) ? getDepth() : 0);
+		for (int i = 0; i < arrays.size(); i++) {
+			tileOf(arrays, i).add(arrays, i, particles.get(i));
+		}
+		gather();
+	}
+
+	/**
+	 * Advances all particles by one time step and moves particles which
+	 * have left their tile to the new one.
+	 * @param boundary boundary type of the particles at the boundaries of
+	 * the domain
+	 */
+	public void push(final double step, final ParticleBoundaryType boundary) {
+		final double width = getWidth();
+		final double height = getHeight();
+		final double depth = (grid.getNumCellsZ() > 1) ? getDepth() : 0;
+		forEachTile(new TileAction() {
+			public void run(Tile tile) {
+				ParticleArrays p = tile.particles;
+				boris.push(p, step);
+				p.applyBoundary(boundary, width, height, depth);
+				// Walk backwards, since leave() moves the last particle into the gap
+				for (int i = p.size() - 1; i >= 0; i--) {
+					if (tileOf(p, i) != tile) {
+						tile.leave(i);
+					}
+				}
+			}
+		});
+
+		migrated = 0;
+		for (Tile tile : tiles) {
+			ParticleArrays out = tile.outgoing;
+			for (int i = 0; i < out.size(); i++) {
+				tileOf(out, i).add(out, i, tile.outgoingObjects.get(i));
+			}
+			migrated += out.size();
+			out.clear();
+			tile.outgoingObjects.clear();
+		}
+	}
+
+	/** Writes positions and velocities back to the particle objects. */
+	public void store() {
+		forEachTile(new TileAction() {
+			public void run(Tile tile) {
+				tile.particles.store(tile.objects);
+			}
+		});
+	}
+
+	/** Replaces the current and charge density of the grid by that of the particles. */
+	public void deposit() {
+		forEachTile(new TileAction() {
+			public void run(Tile tile) {
+				tile.locate(grid);
+				tile.deposit();
+				// Every tile writes only its own cells
+				tile.writeCurrents(grid);
+			}
+		});
+
+		// The guard cells are few, so they are added one tile after the other
+		for (Tile tile : tiles) {
+			tile.addGuardCurrents(grid);
+		}
+	}
+
+	/**
+	 * Copies the fields of the grid including the guard cells into the
+	 * tiles and interpolates them to the particles.
+	 */
+	public void gather() {
+		forEachTile(new TileAction() {
+			public void run(Tile tile) {
+				tile.copyFields(grid);
+				tile.locate(grid);
+				tile.gather();
+			}
+		});
+	}
+
+	private double getWidth() {
+		return grid.getNumCellsX() * grid.getCellWidth();
+	}
+
+	private double getHeight() {
+		return grid.getNumCellsY() * grid.getCellHeight();
+	}
+
+	private double getDepth() {
+		return grid.getNumCellsZ() * grid.getCellDepth();
+	}
+
+	/** The tile which owns the cell of particle i. */
+	private Tile tileOf(ParticleArrays p, int i) {
+		int ci = clamp((int) Math.floor(p.x[i] / grid.getCellWidth()), tileX.length);
+		int cj = clamp((int) Math.floor(p.y[i] / grid.getCellHeight()), tileY.length);
+		int ck = (grid.getNumCellsZ() > 1)
+				? clamp((int) Math.floor(p.z[i] / grid.getCellDepth()), tileZ.length) : 0;
+		return tiles[(tileX[ci] * tilesY + tileY[cj]) * tilesZ + tileZ[ck]];
+	}
+
+	private void forEachTile(final TileAction action) {
+		if (pool == null || tiles.length == 1) {
+			for (Tile tile : tiles) {
+				action.run(tile);
+			}
+			return;
+		}
+		RecursiveAction[] tasks = new RecursiveAction[tiles.length];
+		for (int t = 0; t < tiles.length; t++) {
+			final Tile tile = tiles[t];
+			tasks[t] = new RecursiveAction() {
+				@Override
+				protected void compute() {
+					action.run(tile);
+				}
+			};
+		}
+		pool.invoke(new InvokeAll(tasks));
+	}
+
+	/** Tile index of each of the given number of cells, split into nearly equal parts. */
+	private static int[] split(int cells, int parts) {
+		int[] tile = new int[cells];
+		for (int t = 0; t < parts; t++) {
+			for (int c = (int) ((long) cells * t / parts); c < (long) cells * (t + 1) / parts; c++) {
+				tile[c] = t;
+			}
+		}
+		return tile;
+	}
+
+	/** First cell of tile t, or the number of cells if t is the number of tiles. */
+	private static int first(int[] tile, int t) {
+		int c = 0;
+		while (c < tile.length && tile[c] < t) {
+			c++;
+		}
+		return c;
+	}
+
+	/** Particles on the upper boundary of a hard wall belong to the last cell. */
+	private static int clamp(int index, int cells) {
+		if (index < 0) {
+			return 0;
+		} else if (index >= cells) {
+			return cells - 1;
+		}
+		return index;
+	}
+
+	private interface TileAction {
+		void run(Tile tile);
+	}
+
+	private static class InvokeAll extends RecursiveAction {
+		private RecursiveAction[] tasks;
+
+		InvokeAll(RecursiveAction[] tasks) {
+			this.tasks = tasks;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+}
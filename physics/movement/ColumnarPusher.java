@@ -0,0 +1,94 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.movement;
+
+import java.util.List;
+
+import physics.grid.CellWeights;
+import physics.grid.FieldGather;
+import physics.grid.Grid;
+import physics.particles.Particle;
+import physics.particles.ParticleArrays;
+import physics.solver.BorisVector;
+
+/**
+ * Pushes the particles with a {@link BorisVector} solver in a
+ * {@link ParticleArrays} container instead of particle by particle.
+ *
+ * Every step the particles are copied into the container, the grid fields
+ * are interpolated to them, they are pushed and put back into the
+ * simulation box, and the new positions and velocities are written back.
+ *
+ * Only the electric and magnetic fields of the grid act on the particles,
+ * without relativistic corrections, and they are interpolated with
+ * cloud-in-cell weights. The caller uses this pusher only for simulations
+ * which are set up in the same way, see SimulationStepper.
+ *
+ * The fields can be gathered at the end of the previous step with
+ * {@link #gather}, reusing the weights of the deposition. Otherwise they
+ * are gathered at the beginning of {@link #push}.
+ */
+public class ColumnarPusher {
+
+	private ParticleArrays arrays = new ParticleArrays();
+
+	private FieldGather gather = new FieldGather();
+
+	/** Whether the container holds the particles with their fields since the last gather */
+	private boolean gathered;
+
+	/**
+	 * Loads the particles and interpolates the grid fields to them.
+	 * @param weights cells and weights of the particles at their current
+	 * positions, or null if they have to be computed
+	 */
+	public void gather(List<Particle> particles, Grid grid, CellWeights weights) {
+		arrays.load(particles);
+		if (weights != null && weights.size() == arrays.size()) {
+			gather.gather(arrays, grid, weights);
+		} else {
+			gather.gather(arrays, grid);
+		}
+		gathered = true;
+	}
+
+	/**
+	 * Advances the particles by one time step. The particles must not have
+	 * been moved since the last call to {@link #gather}.
+	 * @param width width of the simulation box
+	 * @param height height of the simulation box
+	 * @param depth depth of the simulation box, 0 for flat simulations
+	 */
+	public void push(ParticleMover mover, BorisVector solver, List<Particle> particles, Grid grid,
+			double step, double width, double height, double depth) {
+		if (!gathered || arrays.size() != particles.size()) {
+			gather(particles, grid, null);
+		}
+		gathered = false;
+		solver.push(arrays, step);
+
+		arrays.applyBoundary(mover.getBoundaryType(), width, height, depth);
+
+		arrays.store(particles);
+	}
+
+	public ParticleArrays getParticleArrays() {
+		return arrays;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.movement;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import physics.force.Force;
+import physics.particles.Particle;
+
+/**
+ * Pushes the particles of a simulation on several threads.
+ * The particle list is split into chunks which are advanced by the
+ * sequential {@link ParticleMover} on a fork-join pool.
+ *
+ * The particles of different chunks are independent of each other, so the
+ * result is the same as for the sequential push as long as the solver,
+ * the force and the boundaries do not keep state between particles.
+ */
+public class ParallelParticlePusher {
+
+	/** Chunks smaller than this are not split any further */
+	private static final int MIN_CHUNK_SIZE = 256;
+
+	private ForkJoinPool pool;
+
+	private int threads;
+
+	/**
+	 * @param threads number of worker threads
+	 */
+	public ParallelParticlePusher(int threads) {
+		this(new ForkJoinPool(threads));
+	}
+
+	/**
+	 * @param pool pool whose workers push the particles
+	 */
+	public ParallelParticlePusher(ForkJoinPool pool) {
+		this.threads = pool.getParallelism();
+		this.pool = pool;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Advances all particles by one time step.
+	 * @param mover sequential mover which is applied to each chunk
+	 */
+	public void push(ParticleMover mover, List<Particle> particles, Force force, double step) {
+		int size = particles.size();
+		// About four chunks per thread for load balancing
+		int chunksize = Math.max(MIN_CHUNK_SIZE, size / (4 * threads) + 1);
+		pool.invoke(new PushTask(mover, particles, force, step, 0, size, chunksize));
+	}
+
+	/** Stops the worker threads. */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private static class PushTask extends RecursiveAction {
+
+		private ParticleMover mover;
+		private List<Particle> particles;
+		private Force force;
+		private double step;
+		private int from;
+		private int to;
+		private int chunksize;
+
+		PushTask(ParticleMover mover, List<Particle> particles, Force force, double step,
+				int from, int to, int chunksize) {
+			this.mover = mover;
+			this.particles = particles;
+			this.force = force;
+			this.step = step;
+			this.from = from;
+			this.to = to;
+			this.chunksize = chunksize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunksize) {
+				mover.push(particles.subList(from, to), force, step);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new PushTask(mover, particles, force, step, from, middle, chunksize),
+						new PushTask(mover, particles, force, step, middle, to, chunksize));
+			}
+		}
+	}
+}
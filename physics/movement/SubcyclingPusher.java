@@ -0,0 +1,224 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.movement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import physics.force.Force;
+import physics.grid.Grid;
+import physics.particles.Particle;
+import physics.solver.Solver;
+
+/**
+ * Pushes particles which move fast compared to the cell size, or which are
+ * in strong fields, with several smaller steps within one global time step.
+ *
+ * Every step each particle is put into a bin l = 0 ... maxLevel and the
+ * particles of bin l are pushed 2^l times with the step dt / 2^l. The
+ * level is the smallest one for which
+ * <ul>
+ * <li>the particle moves at most courant cells per sub-step,</li>
+ * <li>the displacement by its acceleration is at most courant cells and</li>
+ * <li>the magnetic field of its cell turns its velocity by at most
+ * maxRotation radians per sub-step.</li>
+ * </ul>
+ * The fields are not changed in between, only the global step solves them.
+ *
+ * Between steps all particles are kept in the state which the solver
+ * prepared for the global step. Sub-cycled particles are completed with
+ * the global step and prepared with their sub-step before they are pushed,
+ * and the other way round afterwards.
+ *
+ * Every sub-step of the mover stores the position before that sub-step as
+ * the previous position. The displacements of the sub-steps are summed up,
+ * and after the last sub-step the previous position is set back to the
+ * beginning of the global step, so that a charge conserving interpolator
+ * deposits the current of the whole step. Summing the displacements keeps
+ * the previous position consistent with periodic boundaries.
+ */
+public class SubcyclingPusher {
+
+	private int maxLevel;
+
+	/** Maximal displacement per sub-step in cells */
+	private double courant;
+
+	/** Maximal rotation of the velocity by the magnetic field per sub-step */
+	private double maxRotation;
+
+	/** Optional pusher which pushes each bin on several threads */
+	private ParallelParticlePusher parallelPusher;
+
+	/** The particles of each bin, reused between steps */
+	private ArrayList<ArrayList<Particle>> bins;
+
+	/** Displacement of the particles of a bin since the beginning of the global step */
+	private double[] shiftX = new double[0];
+	private double[] shiftY = new double[0];
+	private double[] shiftZ = new double[0];
+
+	/**
+	 * @param maxLevel the smallest sub-step is dt / 2^maxLevel
+	 * @param courant maximal displacement per sub-step in cells
+	 * @param maxRotation maximal rotation by the magnetic field per sub-step
+	 */
+	public SubcyclingPusher(int maxLevel, double courant, double maxRotation) {
+		this.maxLevel = maxLevel;
+		this.courant = courant;
+		this.maxRotation = maxRotation;
+		bins = new ArrayList<ArrayList<Particle>>();
+		for (int l = 0; l <= maxLevel; l++) {
+			bins.add(new ArrayList<Particle>());
+		}
+	}
+
+	/** Pushes the particles of each bin on several threads. */
+	public void setParallelPusher(ParallelParticlePusher parallelPusher) {
+		this.parallelPusher = parallelPusher;
+	}
+
+	public int getMaxLevel() {
+		return maxLevel;
+	}
+
+	/** Number of particles in bin l in the last step. */
+	public int getBinSize(int level) {
+		return bins.get(level).size();
+	}
+
+	/**
+	 * Advances all particles by one global time step.
+	 * @param grid grid whose cell size and magnetic field determine the bins
+	 */
+	public void push(ParticleMover mover, List<Particle> particles, Force force, double step, Grid grid) {
+		for (ArrayList<Particle> bin : bins) {
+			bin.clear();
+		}
+		for (int i = 0; i < particles.size(); i++) {
+			Particle p = particles.get(i);
+			bins.get(level(p, step, grid)).add(p);
+		}
+
+		Solver solver = mover.getSolver();
+		for (int l = 0; l <= maxLevel; l++) {
+			ArrayList<Particle> bin = bins.get(l);
+			if (bin.isEmpty()) {
+				continue;
+			}
+			int substeps = 1 << l;
+			double substep = step / substeps;
+			if (l > 0) {
+				clearShifts(bin.size());
+				for (int i = 0; i < bin.size(); i++) {
+					solver.complete(bin.get(i), force, step);
+					solver.prepare(bin.get(i), force, substep);
+				}
+			}
+			for (int n = 0; n < substeps; n++) {
+				if (parallelPusher != null) {
+					parallelPusher.push(mover, bin, force, substep);
+				} else {
+					mover.push(bin, force, substep);
+				}
+				if (l > 0) {
+					addShifts(bin);
+				}
+			}
+			if (l > 0) {
+				for (int i = 0; i < bin.size(); i++) {
+					Particle p = bin.get(i);
+					solver.complete(p, force, substep);
+					solver.prepare(p, force, step);
+					p.setPrevX(p.getX() - shiftX[i]);
+					p.setPrevY(p.getY() - shiftY[i]);
+					p.setPrevZ(p.getZ() - shiftZ[i]);
+				}
+			}
+		}
+	}
+
+	private void clearShifts(int n) {
+		if (shiftX.length < n) {
+			shiftX = new double[n];
+			shiftY = new double[n];
+			shiftZ = new double[n];
+		} else {
+			Arrays.fill(shiftX, 0, n, 0);
+			Arrays.fill(shiftY, 0, n, 0);
+			Arrays.fill(shiftZ, 0, n, 0);
+		}
+	}
+
+	/** Adds the displacement of the last sub-step. */
+	private void addShifts(ArrayList<Particle> bin) {
+		for (int i = 0; i < bin.size(); i++) {
+			Particle p = bin.get(i);
+			shiftX[i] += p.getX() - p.getPrevX();
+			shiftY[i] += p.getY() - p.getPrevY();
+			shiftZ[i] += p.getZ() - p.getPrevZ();
+		}
+	}
+
+	/** The smallest level whose sub-step fulfils all criteria. */
+	private int level(Particle p, double step, Grid grid) {
+		double cell = Math.min(grid.getCellWidth(), grid.getCellHeight());
+		if (grid.getCellDepth() > 0) {
+			cell = Math.min(cell, grid.getCellDepth());
+		}
+
+		double speed = Math.sqrt(p.getVx() * p.getVx() + p.getVy() * p.getVy() + p.getVz() * p.getVz());
+		double acceleration = Math.sqrt(p.getAx() * p.getAx() + p.getAy() * p.getAy()
+				+ p.getAz() * p.getAz());
+		double rotation = Math.abs(p.getCharge() / p.getMass()) * magneticField(p, grid);
+
+		// Number of sub-steps which each criterion requires
+		double required = Math.max(1, speed * step / (courant * cell));
+		required = Math.max(required, Math.sqrt(acceleration / (2 * courant * cell)) * step);
+		required = Math.max(required, rotation * step / maxRotation);
+
+		int level = 0;
+		while (level < maxLevel && (1 << level) < required) {
+			level++;
+		}
+		return level;
+	}
+
+	/** Magnitude of the magnetic field in the cell of the particle. */
+	private static double magneticField(Particle p, Grid grid) {
+		int i = cellIndex(p.getX(), grid.getCellWidth(), grid.getNumCellsX());
+		int j = cellIndex(p.getY(), grid.getCellHeight(), grid.getNumCellsY());
+		int k = (grid.getCellDepth() > 0) ? cellIndex(p.getZ(), grid.getCellDepth(), grid.getNumCellsZ()) : 0;
+		double bx = grid.getBx(i, j, k);
+		double by = grid.getBy(i, j, k);
+		double bz = grid.getBz(i, j, k);
+		return Math.sqrt(bx * bx + by * by + bz * bz);
+	}
+
+	private static int cellIndex(double position, double cellSize, int cells) {
+		int index = (int) Math.floor(position / cellSize);
+		if (index < 0) {
+			return 0;
+		} else if (index >= cells) {
+			return cells - 1;
+		}
+		return index;
+	}
+}
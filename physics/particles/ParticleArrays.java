@@ -0,0 +1,326 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.particles;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.List;
+
+import physics.movement.boundary.ParticleBoundaryType;
+
+/**
+ * Particle container which stores every particle property in a column of
+ * primitive values (structure of arrays). Particle i is described by
+ * x[i], y[i], z[i], vx[i], ...
+ *
+ * Only the first {@link #size()} entries of each column are valid. The
+ * columns are public so that solvers, interpolators and panels can loop
+ * over them directly:
+ * <pre>
+ * for (int i = 0; i &lt; particles.size(); i++) {
+ *     particles.x[i] += particles.vx[i] * step;
+ * }
+ * </pre>
+ * The column arrays are replaced when the capacity grows, so they must not
+ * be cached across calls to {@link #add} or {@link #ensureCapacity}.
+ */
+public class ParticleArrays {
+
+	public double[] x;
+	public double[] y;
+	public double[] z;
+	public double[] vx;
+	public double[] vy;
+	public double[] vz;
+	public double[] charge;
+	public double[] mass;
+	public double[] radius;
+
+	/** Color as RGB value */
+	public int[] color;
+
+	/**
+	 * Electric and magnetic field at the position of the particle,
+	 * filled by {@link physics.grid.FieldGather}
+	 */
+	public double[] ex;
+	public double[] ey;
+	public double[] ez;
+	public double[] bx;
+	public double[] by;
+	public double[] bz;
+
+	private int size;
+
+	public ParticleArrays() {
+		this(16);
+	}
+
+	public ParticleArrays(int capacity) {
+		allocate(Math.max(capacity, 1));
+	}
+
+	/** Creates a container holding a copy of the given particles. */
+	public ParticleArrays(List<Particle> particles) {
+		this(particles.size());
+		load(particles);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return x.length;
+	}
+
+	/** Removes all particles. The capacity is kept. */
+	public void clear() {
+		size = 0;
+	}
+
+	/** Makes sure that the columns can hold at least the given number of particles. */
+	public void ensureCapacity(int capacity) {
+		if (capacity > x.length) {
+			allocate(Math.max(capacity, 2 * x.length));
+		}
+	}
+
+	/**
+	 * Adds a particle.
+	 * @return index of the new particle
+	 */
+	public int add(double x, double y, double z, double vx, double vy, double vz,
+			double charge, double mass, double radius, int color) {
+		ensureCapacity(size + 1);
+		int i = size++;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.z[i] = z;
+		this.vx[i] = vx;
+		this.vy[i] = vy;
+		this.vz[i] = vz;
+		this.charge[i] = charge;
+		this.mass[i] = mass;
+		this.radius[i] = radius;
+		this.color[i] = color;
+		return i;
+	}
+
+	/**
+	 * Adds a copy of a particle.
+	 * @return index of the new particle
+	 */
+	public int add(Particle p) {
+		return add(p.getX(), p.getY(), p.getZ(), p.getVx(), p.getVy(), p.getVz(),
+				p.getCharge(), p.getMass(), p.getRadius(), getRGB(p.getColor()));
+	}
+
+	/**
+	 * Adds a copy of entry j of another container, including its fields.
+	 * @return index of the new particle
+	 */
+	public int add(ParticleArrays from, int j) {
+		int i = add(from.x[j], from.y[j], from.z[j], from.vx[j], from.vy[j], from.vz[j],
+				from.charge[j], from.mass[j], from.radius[j], from.color[j]);
+		ex[i] = from.ex[j];
+		ey[i] = from.ey[j];
+		ez[i] = from.ez[j];
+		bx[i] = from.bx[j];
+		by[i] = from.by[j];
+		bz[i] = from.bz[j];
+		return i;
+	}
+
+	/**
+	 * Replaces the content of this container by a copy of the given particles.
+	 */
+	public void load(List<Particle> particles) {
+		int n = particles.size();
+		ensureCapacity(n);
+		for (int i = 0; i < n; i++) {
+			Particle p = particles.get(i);
+			x[i] = p.getX();
+			y[i] = p.getY();
+			z[i] = p.getZ();
+			vx[i] = p.getVx();
+			vy[i] = p.getVy();
+			vz[i] = p.getVz();
+			charge[i] = p.getCharge();
+			mass[i] = p.getMass();
+			radius[i] = p.getRadius();
+			color[i] = getRGB(p.getColor());
+		}
+		size = n;
+	}
+
+	/**
+	 * Writes positions and velocities back to the given particles.
+	 * The list has to contain the particles in the order in which they
+	 * were loaded.
+	 */
+	public void store(List<Particle> particles) {
+		for (int i = 0; i < size; i++) {
+			Particle p = particles.get(i);
+			p.setX(x[i]);
+			p.setY(y[i]);
+			p.setZ(z[i]);
+			p.setVx(vx[i]);
+			p.setVy(vy[i]);
+			p.setVz(vz[i]);
+		}
+	}
+
+	/** Creates a particle object from entry i. */
+	public ParticleFull createParticle(int i) {
+		ParticleFull p = new ParticleFull();
+		p.setX(x[i]);
+		p.setY(y[i]);
+		p.setZ(z[i]);
+		p.setVx(vx[i]);
+		p.setVy(vy[i]);
+		p.setVz(vz[i]);
+		p.setCharge(charge[i]);
+		p.setMass(mass[i]);
+		p.setRadius(radius[i]);
+		p.setColor(new Color(color[i]));
+		return p;
+	}
+
+	/** Copies entry j to entry i. */
+	public void copy(int j, int i) {
+		x[i] = x[j];
+		y[i] = y[j];
+		z[i] = z[j];
+		vx[i] = vx[j];
+		vy[i] = vy[j];
+		vz[i] = vz[j];
+		charge[i] = charge[j];
+		mass[i] = mass[j];
+		radius[i] = radius[j];
+		color[i] = color[j];
+		ex[i] = ex[j];
+		ey[i] = ey[j];
+		ez[i] = ez[j];
+		bx[i] = bx[j];
+		by[i] = by[j];
+		bz[i] = bz[j];
+	}
+
+	/**
+	 * Removes entry i by moving the last entry into its place.
+	 * The order of the particles is not preserved.
+	 */
+	public void remove(int i) {
+		size--;
+		if (i != size) {
+			copy(size, i);
+		}
+	}
+
+	/**
+	 * Puts particles which have left the box back in the way the particle
+	 * boundary type of a simulation does: hard walls reflect them, all
+	 * other boundaries are periodic.
+	 */
+	public void applyBoundary(ParticleBoundaryType type, double width, double height, double depth) {
+		if (type == ParticleBoundaryType.Hardwall) {
+			reflect(width, height, depth);
+		} else {
+			wrap(width, height, depth);
+		}
+	}
+
+	/**
+	 * Moves particles which have left the box [0, width) x [0, height) x
+	 * [0, depth) back in from the opposite side. Directions with length 0
+	 * are left alone.
+	 */
+	public void wrap(double width, double height, double depth) {
+		wrap(x, width);
+		wrap(y, height);
+		wrap(z, depth);
+	}
+
+	/**
+	 * Reflects particles which have left the box [0, width] x [0, height] x
+	 * [0, depth] at its walls. Directions with length 0 are left alone.
+	 */
+	public void reflect(double width, double height, double depth) {
+		reflect(x, vx, width);
+		reflect(y, vy, height);
+		reflect(z, vz, depth);
+	}
+
+	private void wrap(double[] position, double length) {
+		if (length <= 0) {
+			return;
+		}
+		for (int i = 0; i < size; i++) {
+			if (position[i] < 0 || position[i] >= length) {
+				position[i] -= Math.floor(position[i] / length) * length;
+			}
+		}
+	}
+
+	private void reflect(double[] position, double[] velocity, double length) {
+		if (length <= 0) {
+			return;
+		}
+		for (int i = 0; i < size; i++) {
+			if (position[i] < 0) {
+				position[i] = -position[i];
+				velocity[i] = -velocity[i];
+			} else if (position[i] > length) {
+				position[i] = 2 * length - position[i];
+				velocity[i] = -velocity[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		x = grow(x, capacity);
+		y = grow(y, capacity);
+		z = grow(z, capacity);
+		vx = grow(vx, capacity);
+		vy = grow(vy, capacity);
+		vz = grow(vz, capacity);
+		charge = grow(charge, capacity);
+		mass = grow(mass, capacity);
+		radius = grow(radius, capacity);
+		color = (color == null) ? new int[capacity] : Arrays.copyOf(color, capacity);
+		ex = grow(ex, capacity);
+		ey = grow(ey, capacity);
+		ez = grow(ez, capacity);
+		bx = grow(bx, capacity);
+		by = grow(by, capacity);
+		bz = grow(bz, capacity);
+	}
+
+	private static double[] grow(double[] column, int capacity) {
+		if (column == null) {
+			return new double[capacity];
+		}
+		return Arrays.copyOf(column, capacity);
+	}
+
+	private static int getRGB(Color c) {
+		return (c == null) ? 0 : c.getRGB() & 0xFFFFFF;
+	}
+}
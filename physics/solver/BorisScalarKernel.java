@@ -0,0 +1,66 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.solver;
+
+import physics.particles.ParticleArrays;
+
+/**
+ * Boris push with one particle at a time. Used when the Vector API is not
+ * available and for the particles left over by {@link BorisVectorKernel}.
+ */
+class BorisScalarKernel implements BorisKernel {
+
+	public void push(ParticleArrays p, double step, int from, int to) {
+		for (int i = from; i < to; i++) {
+			// q / m * dt / 2
+			double qm = p.charge[i] / p.mass[i] * step / 2;
+
+			// First half of the electric acceleration
+			double vmx = p.vx[i] + qm * p.ex[i];
+			double vmy = p.vy[i] + qm * p.ey[i];
+			double vmz = p.vz[i] + qm * p.ez[i];
+
+			// Rotation in the magnetic field
+			double tx = qm * p.bx[i];
+			double ty = qm * p.by[i];
+			double tz = qm * p.bz[i];
+			double s = 2 / (1 + tx * tx + ty * ty + tz * tz);
+			double sx = tx * s;
+			double sy = ty * s;
+			double sz = tz * s;
+
+			double vpx = vmx + vmy * tz - vmz * ty;
+			double vpy = vmy + vmz * tx - vmx * tz;
+			double vpz = vmz + vmx * ty - vmy * tx;
+
+			vmx += vpy * sz - vpz * sy;
+			vmy += vpz * sx - vpx * sz;
+			vmz += vpx * sy - vpy * sx;
+
+			// Second half of the electric acceleration
+			p.vx[i] = vmx + qm * p.ex[i];
+			p.vy[i] = vmy + qm * p.ey[i];
+			p.vz[i] = vmz + qm * p.ez[i];
+
+			p.x[i] += p.vx[i] * step;
+			p.y[i] += p.vy[i] * step;
+			p.z[i] += p.vz[i] * step;
+		}
+	}
+}
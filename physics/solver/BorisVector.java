@@ -0,0 +1,81 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.solver;
+
+import physics.force.Force;
+import physics.particles.Particle;
+import physics.particles.ParticleArrays;
+
+/**
+ * Boris solver which pushes the particles of a {@link ParticleArrays}
+ * container several at a time with the Vector API.
+ *
+ * The Vector API is an incubator module which is only available if the
+ * JVM is started with --add-modules jdk.incubator.vector. The kernel which
+ * uses it is kept in the separate source directory vector/, which is the
+ * only one compiled with that option. Without the module or without the
+ * compiled kernel the particles are pushed one after the other with the
+ * same arithmetic.
+ *
+ * Single particles, e.g. after a collision, are handled by {@link Boris}.
+ */
+public class BorisVector implements Solver {
+
+	private static final BorisKernel KERNEL = createKernel();
+
+	private Boris boris = new Boris();
+
+	/**
+	 * Advances all particles of the container by one step in the fields of
+	 * its field columns. The velocities are taken to be half a step behind
+	 * the positions, as after {@link #prepare}.
+	 */
+	public void push(ParticleArrays p, double step) {
+		KERNEL.push(p, step, 0, p.size());
+	}
+
+	/** Whether the Vector API is used. */
+	public static boolean isVectorized() {
+		return !(KERNEL instanceof BorisScalarKernel);
+	}
+
+	public void step(Particle p, Force f, double step) {
+		boris.step(p, f, step);
+	}
+
+	public void prepare(Particle p, Force f, double step) {
+		boris.prepare(p, f, step);
+	}
+
+	public void complete(Particle p, Force f, double step) {
+		boris.complete(p, f, step);
+	}
+
+	private static BorisKernel createKernel() {
+		try {
+			// Loaded by name, so that this class does not depend on the module
+			return (BorisKernel) Class.forName("physics.solver.BorisVectorKernel")
+					.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			return new BorisScalarKernel();
+		} catch (LinkageError e) {
+			return new BorisScalarKernel();
+		}
+	}
+}
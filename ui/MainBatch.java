@@ -16,14 +16,32 @@
  * with this program; if not, write to the Free Software Foundation, Inc.,
  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
  */
-package pixi.ui;
+package ui;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import pixi.physics.Debug;
-import pixi.physics.Settings;
-import pixi.physics.Simulation;
-import pixi.diagnostics.DiagnosticsScheduler;
+import physics.Debug;
+import physics.Settings;
+import physics.Simulation;
+import physics.collision.algorithms.CollisionAlgorithm;
+import physics.collision.algorithms.MatrixTransformation;
+import physics.collision.algorithms.ScalarMatrixTransformation;
+import physics.collision.algorithms.SimpleCollision;
+import physics.collision.algorithms.VectorTransformation;
+import physics.collision.detectors.AllParticles;
+import physics.collision.detectors.CellList;
+import physics.collision.detectors.Detector;
+import physics.collision.detectors.IncrementalSweepAndPrune;
+import physics.fields.PoissonSolverFFTPeriodicParallel;
+import physics.solver.BorisVector;
+import diagnostics.DataOutput;
+import diagnostics.DiagnosticsScheduler;
+import ui.batch.BatchSettings;
+import ui.batch.Checkpoint;
+import ui.batch.RankCoordinator;
+import ui.batch.RankWorker;
+import ui.batch.SimulationStepper;
+import ui.batch.StepProfiler;
 import ui.util.*;
 import ui.util.yaml.YamlParser;
 
@@ -38,8 +56,21 @@ public class MainBatch {
 	public static int iterations;
 	private static Simulation simulation;
 
+	/** Whether every step is split into phases which are timed separately */
+	private static boolean profile = false;
+
+	/** Checkpoint from which the run is resumed, null for a new run */
+	private static File restart = null;
+
 	/**
 	 * This class takes an input parameter which specifies the YAML file.
+	 * With the option --profile the wall time and the allocation of each
+	 * phase of every step are recorded and summarized at the end of the run.
+	 * With the option --restart &lt;file&gt; a run is resumed from a checkpoint
+	 * which has been written with the output.checkpoint setting.
+	 * With the option --ranks &lt;n&gt; (or the setting ranks) the run is split
+	 * over n worker processes, which are started with the internal option
+	 * --worker &lt;rank&gt; &lt;ranks&gt; &lt;port&gt; &lt;checkpoint&gt;.
 	 *
 	 * Launch using:
 	 * <pre>
@@ -47,7 +78,7 @@ public class MainBatch {
 	 * </pre>
 	 * or
 	 * <pre>
-	 * java -cp target/pixi-0.6-SNAPSHOT.jar ui.MainBatch "One_particle_Test.yaml"
+	 * java -cp target/pixi-0.6-SNAPSHOT.jar ui.MainBatch "One_particle_Test.yaml" --profile
 	 * </pre>
 	 */
 	public static void main(String[] args) throws FileNotFoundException, IOException, InterruptedException {
@@ -55,38 +86,260 @@ public class MainBatch {
 
 		// Creates a settings class with the default parameters
 		Settings settings = new Settings();
+		BatchSettings batchSettings = new BatchSettings();
+
+		// Options start with "--", the first other parameter is taken
+		// as the path to the settings file.
+		String settingsfile = null;
+		int ranks = 0;
+		int workerRank = 0;
+		int workerRanks = 0;
+		int workerPort = 0;
+		File workerCheckpoint = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--profile")) {
+				profile = true;
+			} else if (args[i].equals("--restart") && i + 1 < args.length) {
+				restart = new File(args[++i]);
+			} else if (args[i].equals("--ranks") && i + 1 < args.length) {
+				ranks = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--worker") && i + 4 < args.length) {
+				workerRank = Integer.parseInt(args[++i]);
+				workerRanks = Integer.parseInt(args[++i]);
+				workerPort = Integer.parseInt(args[++i]);
+				workerCheckpoint = new File(args[++i]);
+			} else if (settingsfile == null) {
+				settingsfile = args[i];
+			}
+		}
 
-		// Checks if the user has specified at least one parameter.
-		// If so creates a parser and uses the parameter as the
-		// path to the settings file.
-		if (args.length != 0) {
+		// Checks if the user has specified a settings file.
+		// If so creates a parser and reads the settings.
+		if (settingsfile != null) {
 			File path = new File("input");
-			File file = new File(path, args[0]);
+			File file = new File(path, settingsfile);
 			try {
 				String string = FileIO.readFile(file);
-				YamlParser parser = new YamlParser(settings);
+				YamlParser parser = new YamlParser(settings, batchSettings);
+				// Workers take their particles from the checkpoint of the coordinator
+				parser.setParticles(workerCheckpoint == null);
 				parser.parseString(string);
-				System.out.println("Using " + args[0]);
+				System.out.println("Using " + settingsfile);
 			} catch (IOException e) {
-				System.out.println("Error opening " + args[0]);
+				System.out.println("Error opening " + settingsfile);
 			}
 		}
 
+		if (ranks > 0) {
+			batchSettings.setRanks(ranks);
+		}
+
+		PoissonSolverFFTPeriodicParallel poissonSolver = null;
+		if (batchSettings.isParallelPoissonSolver()) {
+			// Transforms on the number of threads of the settings instead of the common pool
+			poissonSolver = new PoissonSolverFFTPeriodicParallel(batchSettings.getThreads());
+			settings.setPoissonSolver(poissonSolver);
+		}
+
+		if (workerCheckpoint != null) {
+			// Worker process of a multi-process run, the coordinator writes the output
+			new RankWorker(settings, workerRank, workerRanks, workerCheckpoint).run(workerPort);
+			if (poissonSolver != null) {
+				poissonSolver.shutdown();
+			}
+			return;
+		}
+
 		// Creates the actual physics simulation that can be run iteratively.
-		//simulation = new Simulation(settings);
+		simulation = new Simulation(settings);
 
 		//simulation = InitialConditions.initTwoStream(0.01,1,50);
-		simulation = InitialConditions.initPair3D(0.1,1);
+		//simulation = InitialConditions.initPair3D(0.1,1);
 		//simulation = InitialConditions.initOneTest(0.01,1);
 		//simulation = InitialConditions.initOneTest3D(0.01,1);
 		//simulation = InitialConditions.initInterpolationTest3D(0.01,1);
 		//simulation = InitialConditions.initWaveTest(1);
 
-		while (simulation.continues()) {
-			// advance the simulation by one step
-			simulation.step();
+		setUpCollisions(batchSettings);
+
+		int iteration = 0;
+		if (restart != null) {
+			iteration = Checkpoint.restore(simulation, restart);
+			System.out.println("Resuming " + restart + " at iteration " + iteration);
+		}
+
+		// Diagnostics are only written if methods have been specified.
+		DataOutput dataOutput = null;
+		DiagnosticsScheduler diagnostics = null;
+		if (!settings.getDiagnostics().isEmpty()) {
+			dataOutput = createDataOutput(settings, batchSettings);
+			diagnostics = new DiagnosticsScheduler(dataOutput, settings.getDiagnostics());
+		}
+
+		if (batchSettings.isMultiProcess()) {
+			runRanks(settingsfile, settings, batchSettings, diagnostics, dataOutput, iteration);
+		} else if (profile || batchSettings.isParallel() || batchSettings.isParallelDeposition()
+				|| batchSettings.isSubcycling() || batchSettings.isSorting() || batchSettings.isTiled()
+				|| simulation.getParticleMover().getSolver() instanceof BorisVector) {
+			SimulationStepper stepper = new SimulationStepper(simulation, batchSettings);
+			StepProfiler profiler = null;
+			if (profile) {
+				profiler = new StepProfiler(SimulationStepper.PHASES);
+				stepper.setProfiler(profiler);
+			}
+
+			while (simulation.continues()) {
+				// advance the simulation by one step phase by phase
+				stepper.step();
+				runDiagnostics(diagnostics, dataOutput, iteration);
+				writeSnapshot(settings, batchSettings, iteration);
+				writeCheckpoint(settings, batchSettings, iteration++);
+			}
+			stepper.close();
+			stepper.printSortSummary(System.out);
+
+			if (profiler != null) {
+				profiler.printSummary(System.out);
+			}
+		} else {
+			while (simulation.continues()) {
+				// advance the simulation by one step
+				simulation.step();
+				runDiagnostics(diagnostics, dataOutput, iteration);
+				writeSnapshot(settings, batchSettings, iteration);
+				writeCheckpoint(settings, batchSettings, iteration++);
+			}
+		}
+
+		if (dataOutput != null) {
+			dataOutput.closeStreams();
+		}
+
+		if (poissonSolver != null) {
+			poissonSolver.shutdown();
 		}
 
 		//simulation.close();
 	}
+
+	/**
+	 * Runs the simulation on several worker processes which receive the
+	 * initial state as a checkpoint. The particles and fields are collected
+	 * from the workers after every step whose diagnostics, snapshot or
+	 * checkpoint are due, and at the end of the run. The diagnostics methods
+	 * keep their own intervals, so while any are set the state is collected
+	 * after every step.
+	 */
+	private static void runRanks(String settingsfile, Settings settings, BatchSettings batchSettings,
+			DiagnosticsScheduler diagnostics, DataOutput dataOutput, int iteration)
+			throws IOException, InterruptedException {
+		File initial = File.createTempFile("pixi-ranks-", ".checkpoint");
+		initial.deleteOnExit();
+		Checkpoint.write(simulation, iteration, initial);
+
+		RankCoordinator coordinator = new RankCoordinator(simulation, batchSettings);
+		coordinator.start(settingsfile, initial);
+		System.out.println("Running on " + batchSettings.getRanks() + " processes");
+
+		int checkpointInterval = batchSettings.getCheckpointInterval();
+		int snapshotInterval = batchSettings.getSnapshotInterval();
+		while (simulation.continues()) {
+			coordinator.step();
+			if (diagnostics != null
+					|| (snapshotInterval > 0 && iteration % snapshotInterval == 0)
+					|| (checkpointInterval > 0 && (iteration + 1) % checkpointInterval == 0)) {
+				coordinator.collect();
+			}
+			runDiagnostics(diagnostics, dataOutput, iteration);
+			writeSnapshot(settings, batchSettings, iteration);
+			writeCheckpoint(settings, batchSettings, iteration++);
+		}
+		coordinator.collect();
+		coordinator.close();
+	}
+
+	/**
+	 * Creates the text or binary output. In asynchronous mode it is
+	 * wrapped such that the files are written on a separate thread.
+	 */
+	private static DataOutput createDataOutput(Settings settings, BatchSettings batchSettings) throws IOException {
+		DataOutput output;
+		if (batchSettings.getOutputFormat() == BatchSettings.BINARY) {
+			output = new BinaryDataOutput(settings.getFilePath(), settings.getRunid(), simulation.grid);
+		} else {
+			output = new ui.util.DataOutput(settings.getFilePath(), settings.getRunid(), simulation.grid);
+		}
+		if (batchSettings.isAsyncOutput()) {
+			output = new AsyncDataOutput(output, batchSettings.getOutputQueue(), batchSettings.getOutputPolicy());
+		}
+		return output;
+	}
+
+	private static void runDiagnostics(DiagnosticsScheduler diagnostics, DataOutput dataOutput,
+			int iteration) throws IOException {
+		if (diagnostics != null) {
+			dataOutput.setIteration(iteration);
+			diagnostics.run(simulation, iteration);
+		}
+	}
+
+	/** Writes the fields to a memory-mapped snapshot file every few steps. */
+	private static void writeSnapshot(Settings settings, BatchSettings batchSettings,
+			int iteration) throws IOException {
+		int interval = batchSettings.getSnapshotInterval();
+		if (interval > 0 && iteration % interval == 0) {
+			File file = new File(settings.getFilePath() + "fields-" + settings.getRunid()
+					+ "-" + iteration + ".snapshot");
+			FieldSnapshot.write(simulation.grid, file, iteration);
+		}
+	}
+
+	/**
+	 * Writes a checkpoint after every few steps. The checkpoint stores the
+	 * number of the next iteration, which is where a restarted run continues.
+	 */
+	private static void writeCheckpoint(Settings settings, BatchSettings batchSettings,
+			int iteration) throws IOException {
+		int interval = batchSettings.getCheckpointInterval();
+		if (interval > 0 && (iteration + 1) % interval == 0) {
+			File file = new File(settings.getFilePath() + "checkpoint-" + settings.getRunid());
+			Checkpoint.write(simulation, iteration + 1, file);
+		}
+	}
+
+	/** Sets the collision detector and algorithm chosen in the settings file. */
+	private static void setUpCollisions(BatchSettings batchSettings) {
+		switch (batchSettings.getCollisionDetector()) {
+		case BatchSettings.NO_COLLISIONS:
+			simulation.detector = new Detector();
+			simulation.collisionalgorithm = new CollisionAlgorithm();
+			return;
+		case BatchSettings.ALL_PARTICLES:
+			simulation.detector = new AllParticles(simulation.particles);
+			break;
+		case BatchSettings.SWEEP_AND_PRUNE:
+			simulation.detector = new IncrementalSweepAndPrune(simulation.particles);
+			break;
+		case BatchSettings.CELL_LIST:
+			simulation.detector = new CellList(simulation.particles, simulation.grid);
+			break;
+		default:
+			return;
+		}
+
+		switch (batchSettings.getCollisionAlgorithm()) {
+		case BatchSettings.SIMPLE_COLLISION:
+			simulation.collisionalgorithm = new SimpleCollision();
+			break;
+		case BatchSettings.VECTOR_TRANSFORMATION:
+			simulation.collisionalgorithm = new VectorTransformation();
+			break;
+		case BatchSettings.MATRIX_TRANSFORMATION:
+			simulation.collisionalgorithm = new MatrixTransformation();
+			break;
+		case BatchSettings.SCALAR_MATRIX_TRANSFORMATION:
+			simulation.collisionalgorithm = new ScalarMatrixTransformation();
+			break;
+		}
+	}
 }
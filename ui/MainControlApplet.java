@@ -31,6 +31,7 @@ import physics.movement.boundary.ParticleBoundaryType;
 import physics.solver.*;
 import physics.solver.relativistic.*;
 import ui.panel.AnimationPanel;
+import ui.panel.DensityPanel;
 import ui.panel.Particle2DPanel;
 import ui.panel.Particle3DPanel;
 import ui.panel.PhaseSpacePanel;
@@ -58,6 +59,7 @@ public class MainControlApplet extends JApplet {
 	private JSlider gfieldYSlider;
 
 	private JCheckBox framerateCheck;
+	private JCheckBox threadedCheck;
 	private JCheckBox currentgridCheck;
 	private JCheckBox drawFieldsCheck;
 	private JCheckBox calculateFieldsCheck;
@@ -85,6 +87,7 @@ public class MainControlApplet extends JApplet {
 	private Particle3DPanel particle3DPanel;
 	private PhaseSpacePanel phaseSpacePanel;
 	private ElectricFieldPanel electricFieldPanel;
+	private DensityPanel densityPanel;
 
 	private static final double speedSliderScaling = 0.07;
 	private static final double stepSliderScaling = 0.01;
@@ -127,24 +130,30 @@ public class MainControlApplet extends JApplet {
 	String[] collisionsString = {
 			"No collisions",
 			"All particles",
-			"Sweep & Prune"
+			"Sweep & Prune",
+			"Cell list"
 	};
 
 	String[] collisionalgorithmString = {
 			"Simple collision",
 			"With vectors",
-			"With matrices"
+			"With matrices",
+			"With scalar matrices"
 	};
 
 
 
 	private void linkConstantForce() {
-		Simulation s = simulationAnimation.getSimulation();
-		force = getFirstConstantForce(s.f);
-		if(force == null) {
-			force = new ConstantForce();
-			s.f.add(force);
-		}
+		final Simulation s = simulationAnimation.getSimulation();
+		simulationAnimation.changeSimulation(new Runnable() {
+			public void run() {
+				force = getFirstConstantForce(s.f);
+				if(force == null) {
+					force = new ConstantForce();
+					s.f.add(force);
+				}
+			}
+		});
 		assert force != null : "no force found";
 	}
 
@@ -174,13 +183,29 @@ public class MainControlApplet extends JApplet {
 	 */
 	class SliderListener implements ChangeListener {
 		public void stateChanged(ChangeEvent eve) {
-			Timer timer = simulationAnimation.getTimer();
 			JSlider source = (JSlider) eve.getSource();
 			if(source.getValueIsAdjusting())
 			{
-				int delay = (int) (1000 * Math.exp(-source.getValue() * speedSliderScaling));
-				timer.setDelay(delay);
+				setSpeed(source.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Sets the timer delay, or the target step rate if the simulation runs
+	 * on its own thread. The fastest setting of the slider steps the
+	 * threaded simulation at full speed.
+	 */
+	private void setSpeed(int value) {
+		int delay = (int) (1000 * Math.exp(-value * speedSliderScaling));
+		if (simulationAnimation.isThreaded()) {
+			if (value == speedSlider.getMaximum()) {
+				simulationAnimation.setTargetStepRate(0);
+			} else {
+				simulationAnimation.setTargetStepRate(1000. / delay);
 			}
+		} else {
+			simulationAnimation.getTimer().setDelay(delay);
 		}
 	}
 
@@ -331,6 +356,13 @@ public class MainControlApplet extends JApplet {
 		}
 	}
 
+	class ThreadedListener implements ItemListener {
+		public void itemStateChanged(ItemEvent eve) {
+			simulationAnimation.setThreaded(eve.getStateChange() == ItemEvent.SELECTED);
+			setSpeed(speedSlider.getValue());
+		}
+	}
+
 	class FrameListener implements ItemListener {
 		public void itemStateChanged(ItemEvent eve) {
 			if(eve.getStateChange() == ItemEvent.SELECTED) {
@@ -348,8 +380,12 @@ public class MainControlApplet extends JApplet {
 			JSlider source = (JSlider) eve.getSource();
 			if(source.getValueIsAdjusting())
 			{
-				double value = source.getValue() * dragSliderScaling;
-				force.drag = value;
+				final double value = source.getValue() * dragSliderScaling;
+				simulationAnimation.changeSimulation(new Runnable() {
+					public void run() {
+						force.drag = value;
+					}
+				});
 			}
 		}
 	}
@@ -359,8 +395,12 @@ public class MainControlApplet extends JApplet {
 			JSlider source = (JSlider) eve.getSource();
 			if(source.getValueIsAdjusting())
 			{
-				double value = source.getValue() * exSliderScaling;
-				force.ex = value;
+				final double value = source.getValue() * exSliderScaling;
+				simulationAnimation.changeSimulation(new Runnable() {
+					public void run() {
+						force.ex = value;
+					}
+				});
 			}
 		}
 	}
@@ -370,8 +410,12 @@ public class MainControlApplet extends JApplet {
 			JSlider source = (JSlider) eve.getSource();
 			if(source.getValueIsAdjusting())
 			{
-				double value = source.getValue() * eySliderScaling;
-				force.ey = value;
+				final double value = source.getValue() * eySliderScaling;
+				simulationAnimation.changeSimulation(new Runnable() {
+					public void run() {
+						force.ey = value;
+					}
+				});
 			}
 		}
 	}
@@ -381,8 +425,12 @@ public class MainControlApplet extends JApplet {
 			JSlider source = (JSlider) eve.getSource();
 			if(source.getValueIsAdjusting())
 			{
-				double value = source.getValue() * bzSliderScaling;
-				force.bz = value;
+				final double value = source.getValue() * bzSliderScaling;
+				simulationAnimation.changeSimulation(new Runnable() {
+					public void run() {
+						force.bz = value;
+					}
+				});
 			}
 		}
 	}
@@ -392,8 +440,12 @@ public class MainControlApplet extends JApplet {
 			JSlider source = (JSlider) eve.getSource();
 			if(source.getValueIsAdjusting())
 			{
-				double value = source.getValue() * gxSliderScaling;
-				force.gx = value;
+				final double value = source.getValue() * gxSliderScaling;
+				simulationAnimation.changeSimulation(new Runnable() {
+					public void run() {
+						force.gx = value;
+					}
+				});
 			}
 		}
 	}
@@ -403,34 +455,46 @@ public class MainControlApplet extends JApplet {
 			JSlider source = (JSlider) eve.getSource();
 			if(source.getValueIsAdjusting())
 			{
-				double value = source.getValue() * gySliderScaling;
-				force.gy = value;
+				final double value = source.getValue() * gySliderScaling;
+				simulationAnimation.changeSimulation(new Runnable() {
+					public void run() {
+						force.gy = value;
+					}
+				});
 			}
 		}
 	}
 
 	class StepListener implements ChangeListener{
 		public void stateChanged(ChangeEvent eve) {
-			Simulation s = simulationAnimation.getSimulation();
+			final Simulation s = simulationAnimation.getSimulation();
 			JSlider source = (JSlider) eve.getSource();
 			if(source.getValueIsAdjusting())
 			{
-				double value = source.getValue() * stepSliderScaling;
-				s.tstep = value;
+				final double value = source.getValue() * stepSliderScaling;
+				simulationAnimation.changeSimulation(new Runnable() {
+					public void run() {
+						s.tstep = value;
+					}
+				});
 			}
 		}
 	}
 
 	class BoxDimension implements ActionListener{
 		public void actionPerformed(ActionEvent eve) {
-			Simulation s = simulationAnimation.getSimulation();
-			int xbox = Integer.parseInt(xboxentry.getText());
-			int ybox = Integer.parseInt(yboxentry.getText());
-			int zbox = Integer.parseInt(zboxentry.getText());
-			double width = s.getWidth();
-			double height = s.getHeight();
-			double depth = s.getDepth();
-			s.grid.changeSize(xbox, ybox, zbox, width, height, depth);
+			final Simulation s = simulationAnimation.getSimulation();
+			final int xbox = Integer.parseInt(xboxentry.getText());
+			final int ybox = Integer.parseInt(yboxentry.getText());
+			final int zbox = Integer.parseInt(zboxentry.getText());
+			final double width = s.getWidth();
+			final double height = s.getHeight();
+			final double depth = s.getDepth();
+			simulationAnimation.changeSimulation(new Runnable() {
+				public void run() {
+					s.grid.changeSize(xbox, ybox, zbox, width, height, depth);
+				}
+			});
 		}
 	}
 
@@ -607,6 +671,9 @@ public class MainControlApplet extends JApplet {
 		framerateCheck = new JCheckBox("Info");
 		framerateCheck.addItemListener(new FrameListener());
 
+		threadedCheck = new JCheckBox("Separate thread");
+		threadedCheck.addItemListener(new ThreadedListener());
+
 		xboxentry = new JTextField(2);
 		xboxentry.setText("10");
 		xboxentry.addActionListener(new BoxDimension());
@@ -662,6 +729,7 @@ public class MainControlApplet extends JApplet {
 		settingControls.add(boundaries);
 		settingControls.add(traceCheck);
 		settingControls.add(framerateCheck);
+		settingControls.add(threadedCheck);
 
 		Box panelBox = Box.createVerticalBox();
 		panelBox.add(controlPanelUp);
@@ -756,6 +824,8 @@ public class MainControlApplet extends JApplet {
 	JMenuItem itemClosePanel;
 	JMenuItem itemParticle2DPanel;
 	JMenuItem itemParticle3DPanel;
+	JMenuItem itemDensityPanel;
+	JMenuItem itemSpeciesPanel;
 	JMenuItem itemPhaseSpacePanel;
 	JMenuItem itemElectricFieldPanel;
 
@@ -786,6 +856,14 @@ public class MainControlApplet extends JApplet {
 			itemParticle3DPanel.addActionListener(new MenuSelected());
 			add(itemParticle3DPanel);
 
+			itemDensityPanel = new JMenuItem("Density");
+			itemDensityPanel.addActionListener(new MenuSelected());
+			add(itemDensityPanel);
+
+			itemSpeciesPanel = new JMenuItem("Density by species");
+			itemSpeciesPanel.addActionListener(new MenuSelected());
+			add(itemSpeciesPanel);
+
 			itemPhaseSpacePanel = new JMenuItem("Phase space");
 			itemPhaseSpacePanel.addActionListener(new MenuSelected());
 			add(itemPhaseSpacePanel);
@@ -840,6 +918,12 @@ public class MainControlApplet extends JApplet {
 			} else if (event.getSource() == itemParticle3DPanel) {
 				particle3DPanel = new Particle3DPanel(simulationAnimation);
 				component = particle3DPanel;
+			} else if (event.getSource() == itemDensityPanel) {
+				densityPanel = new DensityPanel(simulationAnimation, false);
+				component = densityPanel;
+			} else if (event.getSource() == itemSpeciesPanel) {
+				densityPanel = new DensityPanel(simulationAnimation, true);
+				component = densityPanel;
 			} else if (event.getSource() == itemPhaseSpacePanel) {
 				phaseSpacePanel = new PhaseSpacePanel(simulationAnimation);
 				component = phaseSpacePanel;
@@ -974,7 +1058,6 @@ public class MainControlApplet extends JApplet {
 	public void setSlidersValue()
 	{
 		Simulation s = simulationAnimation.getSimulation();
-		Timer timer = simulationAnimation.getTimer();
 
 		stepSlider.setValue((int)(s.tstep / stepSliderScaling));
 		efieldXSlider.setValue((int) (force.ex / exSliderScaling));
@@ -986,7 +1069,7 @@ public class MainControlApplet extends JApplet {
 		//int delay = particlePanel.timer.getDelay();
 		//speedSlider.setValue((int) (-Math.log(delay / 1000.) / speedSliderScaling));
 		speedSlider.setValue(50);
-		timer.setDelay((int) (1000 * Math.exp(-50 * speedSliderScaling)));
+		setSpeed(50);
 		xboxentry.setText("10");
 		yboxentry.setText("10");
 		zboxentry.setText("10");
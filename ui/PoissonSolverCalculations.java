@@ -7,9 +7,11 @@ import physics.fields.PoissonSolverFFTPeriodic;
 import physics.fields.SimpleSolver;
 import physics.grid.ChargeConservingCIC;
 import physics.grid.Grid;
+import ui.util.FieldSnapshot;
 import ui.util.WriteFile;
 
 import java.io.File;
+import java.io.IOException;
 
 public class PoissonSolverCalculations {
 
@@ -122,6 +124,14 @@ public class PoissonSolverCalculations {
 		}
 		potentialFile.closeFstream();
 
+		//writes all fields to "fields.snapshot" which can be mapped by
+		//post-processing tools, see FieldSnapshot for the layout
+		try {
+			FieldSnapshot.write(g, new File("fields.snapshot"), 0);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
 		//YOU NEED GNUPLOT FOR THIS http://www.gnuplot.info/
 		//NEEDS TO BE IN YOUR EXECUTION PATH (i.e. PATH variable on windows)
 		//plots the above output as vector field
@@ -5,6 +5,8 @@ import java.awt.event.ActionListener;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,11 +17,13 @@ import physics.Settings;
 import physics.Simulation;
 import physics.collision.algorithms.CollisionAlgorithm;
 import physics.collision.algorithms.MatrixTransformation;
+import physics.collision.algorithms.ScalarMatrixTransformation;
 import physics.collision.algorithms.SimpleCollision;
 import physics.collision.algorithms.VectorTransformation;
 import physics.collision.detectors.AllParticles;
+import physics.collision.detectors.CellList;
 import physics.collision.detectors.Detector;
-import physics.collision.detectors.SweepAndPrune;
+import physics.collision.detectors.IncrementalSweepAndPrune;
 import physics.force.CombinedForce;
 import physics.force.ConstantForce;
 import physics.force.Force;
@@ -40,9 +44,17 @@ import physics.solver.relativistic.LeapFrogRelativistic;
 import physics.solver.relativistic.SemiImplicitEulerRelativistic;
 import ui.panel.Particle2DPanel;
 import ui.util.FrameRateDetector;
+import ui.util.SimulationSnapshot;
+import ui.util.SnapshotBuffer;
 
 /**
  * Wrapper for the simulation class in GUI applications.
+ *
+ * By default the simulation is stepped by a Swing timer on the event
+ * dispatch thread. In threaded mode it is stepped by its own thread, at
+ * full speed or at a target step rate, while the timer only repaints the
+ * panels at display rate. In both modes the panels paint from the latest
+ * snapshot published in {@link #getSnapshots()}.
  */
 public class SimulationAnimation {
 
@@ -60,48 +72,215 @@ public class SimulationAnimation {
 
 	private FrameRateDetector frameratedetector;
 
+	private FrameRateDetector stepratedetector;
+
+	private SnapshotBuffer snapshots = new SnapshotBuffer();
+
+	/** Number of steps since the last reset */
+	private long steps;
+
+	/** Whether the simulation is stepped by its own thread */
+	private boolean threaded = false;
+
+	/** Steps per second in threaded mode, 0 for full speed */
+	private volatile double targetsteprate = 0;
+
+	/** Timer delay of the non-threaded mode */
+	private int stepdelay = interval;
+
+	private Thread stepthread;
+
+	private volatile boolean running;
+
+	/**
+	 * Held while the simulation is stepped or changed. It is fair, so that
+	 * the event dispatch thread gets it before the next step of a step
+	 * thread running at full speed.
+	 */
+	private final ReentrantLock steplock = new ReentrantLock(true);
+
+
 	private ArrayList<SimulationAnimationListener> listeners = new ArrayList<SimulationAnimationListener>();
 
 	/** Constructor */
 	public SimulationAnimation() {
 		timer = new Timer(interval, new TimerListener());
 		frameratedetector = new FrameRateDetector(500);
+		stepratedetector = new FrameRateDetector(500);
 		s = InitialConditions.initRandomParticles(10, 2);
+		publish();
 	}
 
 	/** Listener for timer */
 	public class TimerListener implements ActionListener {
 
 		public void actionPerformed(ActionEvent eve) {
-			try {
-				s.step();
-			} catch (FileNotFoundException ex) {
-				Logger.getLogger(Particle2DPanel.class.getName()).log(Level.SEVERE, null, ex);
-			} catch (IOException ex2) {
-				Logger.getLogger(Particle2DPanel.class.getName()).log(Level.SEVERE, null, ex2);
+			if (!threaded) {
+				step();
+				publish();
 			}
 			frameratedetector.update();
 			repaint();
 		}
 	}
 
+	/**
+	 * Steps the simulation in threaded mode and publishes a snapshot
+	 * whenever the display interval has passed.
+	 */
+	private class StepLoop implements Runnable {
+
+		public void run() {
+			long period = interval * 1000000L;
+			long lastpublished = System.nanoTime() - period;
+			long next = System.nanoTime();
+			while (running) {
+				steplock.lock();
+				try {
+					step();
+					if (System.nanoTime() - lastpublished >= period) {
+						snapshots.publish(s, steps);
+						lastpublished = System.nanoTime();
+					}
+				} finally {
+					steplock.unlock();
+				}
+				double rate = targetsteprate;
+				if (rate > 0) {
+					next += (long) (1e9 / rate);
+					long wait = next - System.nanoTime();
+					if (wait > 0) {
+						LockSupport.parkNanos(wait);
+					} else if (wait < -period) {
+						// Do not catch up on steps missed by a slow simulation
+						next = System.nanoTime();
+					}
+				}
+			}
+		}
+	}
+
+	private void step() {
+		try {
+			s.step();
+		} catch (FileNotFoundException ex) {
+			Logger.getLogger(Particle2DPanel.class.getName()).log(Level.SEVERE, null, ex);
+		} catch (IOException ex2) {
+			Logger.getLogger(Particle2DPanel.class.getName()).log(Level.SEVERE, null, ex2);
+		}
+		steps++;
+		stepratedetector.update();
+	}
+
+	private void publish() {
+		steplock.lock();
+		try {
+			snapshots.publish(s, steps);
+		} finally {
+			steplock.unlock();
+		}
+	}
+
 	public void startAnimation() {
+		if (threaded && stepthread == null) {
+			running = true;
+			stepthread = new Thread(new StepLoop(), "Simulation");
+			stepthread.setDaemon(true);
+			stepthread.start();
+		}
 		timer.start();
 	}
 
 	public void stopAnimation() {
 		timer.stop();
+		if (stepthread != null) {
+			running = false;
+			try {
+				stepthread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			stepthread = null;
+			publish();
+			repaint();
+		}
 		//test = false;
 	}
 
+	public boolean isRunning() {
+		return timer.isRunning();
+	}
+
+	/**
+	 * Switches between stepping on the event dispatch thread and stepping
+	 * on a separate thread. A running animation keeps running.
+	 */
+	public void setThreaded(boolean threaded) {
+		if (threaded == this.threaded) {
+			return;
+		}
+		boolean wasrunning = isRunning();
+		stopAnimation();
+		this.threaded = threaded;
+		if (threaded) {
+			stepdelay = timer.getDelay();
+			timer.setDelay(interval);
+		} else {
+			timer.setDelay(stepdelay);
+		}
+		if (wasrunning) {
+			startAnimation();
+		}
+	}
+
+	public boolean isThreaded() {
+		return threaded;
+	}
+
+	/**
+	 * Sets the number of steps per second in threaded mode.
+	 * @param rate steps per second, 0 to step at full speed
+	 */
+	public void setTargetStepRate(double rate) {
+		targetsteprate = rate;
+	}
+
 	public Simulation getSimulation() {
 		return s;
 	}
 
+	/** Measures the rate at which the panels are repainted. */
 	public FrameRateDetector getFrameRateDetector() {
 		return frameratedetector;
 	}
 
+	/** Measures the rate at which the simulation is stepped. */
+	public FrameRateDetector getStepRateDetector() {
+		return stepratedetector;
+	}
+
+	/**
+	 * Snapshots of the simulation from which the panels paint.
+	 * @see SnapshotBuffer#acquire()
+	 */
+	public SnapshotBuffer getSnapshots() {
+		return snapshots;
+	}
+
+	/**
+	 * Runs a change of the simulation from another thread while holding
+	 * the lock which is held while the simulation is stepped, as the
+	 * methods of this class which change the simulation do.
+	 */
+	public void changeSimulation(Runnable change) {
+		steplock.lock();
+		try {
+			change.run();
+		} finally {
+			steplock.unlock();
+		}
+	}
+
 	public Timer getTimer() {
 		return timer;
 	}
@@ -138,7 +317,7 @@ public class SimulationAnimation {
 
 	public void resetAnimation(int id) {
 		// timer.restart();
-		timer.stop();
+		stopAnimation();
 		clear();
 		switch(id) {
 		case 0:
@@ -190,7 +369,9 @@ public class SimulationAnimation {
 		updateFieldForce();
 		s.prepareAllParticles();
 		s.turnGridForceOn();
-		timer.start();
+		steps = 0;
+		publish();
+		startAnimation();
 	}
 
 	/**
@@ -200,18 +381,25 @@ public class SimulationAnimation {
 	 */
 	public void resetAnimation(Settings settings) {
 		// timer.restart();
-		timer.stop();
+		stopAnimation();
 		clear();
 		s = new Simulation(settings);
 		//updateFieldForce();
 		s.prepareAllParticles();
 		//s.turnGridForceOn();
-		timer.start();
+		steps = 0;
+		publish();
+		startAnimation();
 	}
 
 	public void calculateFields() {
-		calculateFields =! calculateFields;
-		updateFieldForce();
+		steplock.lock();
+		try {
+			calculateFields =! calculateFields;
+			updateFieldForce();
+		} finally {
+			steplock.unlock();
+		}
 	}
 
 	private void updateFieldForce() {
@@ -226,132 +414,163 @@ public class SimulationAnimation {
 
 	public void algorithmChange(int id)
 	{
-		s.completeAllParticles();
-
-		switch(id) {
-		case 0:
-			s.getParticleMover().setSolver(new EulerRichardson());
-			break;
-		case 1:
-			s.getParticleMover().setSolver(new LeapFrog());
-			break;
-		case 2:
-			s.getParticleMover().setSolver(new LeapFrogDamped());
-			break;
-		case 3:
-			s.getParticleMover().setSolver(new LeapFrogHalfStep());
-			break;
-		case 4:
-			s.getParticleMover().setSolver(new Boris());
-			break;
-		case 5:
-			s.getParticleMover().setSolver(new BorisDamped());
-			break;
-		case 6:
-			s.getParticleMover().setSolver(new SemiImplicitEuler());
-			break;
-		case 7:
-			s.getParticleMover().setSolver(new Euler());
-			break;
-			}
+		steplock.lock();
+		try {
+			s.completeAllParticles();
 
-		s.prepareAllParticles();
-	}
-
-	public void relativisticEffects(int i) {
-		relativistic =! relativistic;
-
-		if(relativistic == false) {
-			s.relativistic = false;
-			if (s.f instanceof CombinedForce) {
-				ArrayList<Force> forces = ((CombinedForce) s.f).forces;
-				for (int j = 0; j < forces.size(); j++) {
-					if (forces.get(j) instanceof ConstantForceRelativistic){
-						forces.set(j, new ConstantForce());
-					}
-					if (forces.get(j) instanceof SimpleGridForceRelativistic){
-						forces.set(j, new SimpleGridForce());
-					}
-				}
-			}
-			switch(i) {
+			switch(id) {
+			case 0:
+				s.getParticleMover().setSolver(new EulerRichardson());
+				break;
 			case 1:
 				s.getParticleMover().setSolver(new LeapFrog());
+				break;
+			case 2:
+				s.getParticleMover().setSolver(new LeapFrogDamped());
+				break;
+			case 3:
+				s.getParticleMover().setSolver(new LeapFrogHalfStep());
+				break;
 			case 4:
 				s.getParticleMover().setSolver(new Boris());
 				break;
+			case 5:
+				s.getParticleMover().setSolver(new BorisDamped());
+				break;
 			case 6:
 				s.getParticleMover().setSolver(new SemiImplicitEuler());
 				break;
-			}
+			case 7:
+				s.getParticleMover().setSolver(new Euler());
+				break;
+				}
+
+			s.prepareAllParticles();
+		} finally {
+			steplock.unlock();
 		}
+	}
 
-		if(relativistic == true) {
-			s.relativistic = true;
-			//System.out.println("relativistic version on");
-			if (s.f instanceof CombinedForce) {
-				ArrayList<Force> forces = ((CombinedForce) s.f).forces;
-				for (int j = 0; j < forces.size(); j++) {
-					if (forces.get(j) instanceof ConstantForce){
-						forces.set(j, new ConstantForceRelativistic(s.getSpeedOfLight()));
+	public void relativisticEffects(int i) {
+		steplock.lock();
+		try {
+			relativistic =! relativistic;
+
+			if(relativistic == false) {
+				s.relativistic = false;
+				if (s.f instanceof CombinedForce) {
+					ArrayList<Force> forces = ((CombinedForce) s.f).forces;
+					for (int j = 0; j < forces.size(); j++) {
+						if (forces.get(j) instanceof ConstantForceRelativistic){
+							forces.set(j, new ConstantForce());
+						}
+						if (forces.get(j) instanceof SimpleGridForceRelativistic){
+							forces.set(j, new SimpleGridForce());
+						}
 					}
-					if (forces.get(j) instanceof SimpleGridForce){
-						forces.set(j, new SimpleGridForceRelativistic(s));
+				}
+				switch(i) {
+				case 1:
+					s.getParticleMover().setSolver(new LeapFrog());
+				case 4:
+					s.getParticleMover().setSolver(new Boris());
+					break;
+				case 6:
+					s.getParticleMover().setSolver(new SemiImplicitEuler());
+					break;
+				}
+			}
+
+			if(relativistic == true) {
+				s.relativistic = true;
+				//System.out.println("relativistic version on");
+				if (s.f instanceof CombinedForce) {
+					ArrayList<Force> forces = ((CombinedForce) s.f).forces;
+					for (int j = 0; j < forces.size(); j++) {
+						if (forces.get(j) instanceof ConstantForce){
+							forces.set(j, new ConstantForceRelativistic(s.getSpeedOfLight()));
+						}
+						if (forces.get(j) instanceof SimpleGridForce){
+							forces.set(j, new SimpleGridForceRelativistic(s));
+						}
 					}
 				}
+				switch(i) {
+				case 1:
+					s.getParticleMover().setSolver(new LeapFrogRelativistic(s.getSpeedOfLight()));
+				case 4:
+					s.getParticleMover().setSolver(new BorisRelativistic(s.getSpeedOfLight()));
+					break;
+				case 6:
+					s.getParticleMover().setSolver(new SemiImplicitEulerRelativistic(s.getSpeedOfLight()));
+					break;
+				}
 			}
+
+		} finally {
+			steplock.unlock();
+		}
+	}
+
+	public void collisionChange(int i) {
+		steplock.lock();
+		try {
 			switch(i) {
+			case 0:
+				s.detector = new Detector();
+				s.collisionalgorithm = new CollisionAlgorithm();
+				break;
 			case 1:
-				s.getParticleMover().setSolver(new LeapFrogRelativistic(s.getSpeedOfLight()));
-			case 4:
-				s.getParticleMover().setSolver(new BorisRelativistic(s.getSpeedOfLight()));
+				s.detector = new AllParticles(s.particles);
 				break;
-			case 6:
-				s.getParticleMover().setSolver(new SemiImplicitEulerRelativistic(s.getSpeedOfLight()));
+			case 2:
+				s.detector = new IncrementalSweepAndPrune(s.particles);
+				break;
+			case 3:
+				s.detector = new CellList(s.particles, s.grid);
 				break;
 			}
-		}
-
-	}
-
-	public void collisionChange(int i) {
-		switch(i) {
-		case 0:
-			s.detector = new Detector();
-			s.collisionalgorithm = new CollisionAlgorithm();
-			break;
-		case 1:
-			s.detector = new AllParticles(s.particles);
-			break;
-		case 2:
-			s.detector = new SweepAndPrune(s.particles);
-			break;
+		} finally {
+			steplock.unlock();
 		}
 	}
 
 	public void algorithmCollisionChange(int i) {
-		switch(i) {
-		case 0:
-			s.collisionalgorithm = new SimpleCollision();
-			break;
-		case 1:
-			s.collisionalgorithm = new VectorTransformation();
-			break;
-		case 2:
-			s.collisionalgorithm = new MatrixTransformation();
-			break;
+		steplock.lock();
+		try {
+			switch(i) {
+			case 0:
+				s.collisionalgorithm = new SimpleCollision();
+				break;
+			case 1:
+				s.collisionalgorithm = new VectorTransformation();
+				break;
+			case 2:
+				s.collisionalgorithm = new MatrixTransformation();
+				break;
+			case 3:
+				s.collisionalgorithm = new ScalarMatrixTransformation();
+				break;
+			}
+		} finally {
+			steplock.unlock();
 		}
 	}
 
 	public void boundariesChange(int i) {
-		switch(i) {
-		case 0:
-			s.getParticleMover().changeBoundaryType(ParticleBoundaryType.Hardwall);
-			break;
-		case 1:
-			s.getParticleMover().changeBoundaryType(ParticleBoundaryType.Periodic);
-		}
+		steplock.lock();
+		try {
+			switch(i) {
+			case 0:
+				s.getParticleMover().changeBoundaryType(ParticleBoundaryType.Hardwall);
+				break;
+			case 1:
+				s.getParticleMover().changeBoundaryType(ParticleBoundaryType.Periodic);
+			}
 
+		} finally {
+			steplock.unlock();
+		}
 	}
 
 }
@@ -0,0 +1,310 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package ui.batch;
+
+import physics.grid.ParticleSorter;
+import ui.util.AsyncDataOutput;
+
+/**
+ * Settings which describe how a batch run is executed, as opposed to
+ * the physical setup stored in {@link physics.Settings}.
+ */
+public class BatchSettings {
+
+	public static final int SEQUENTIAL = 0;
+	public static final int PARALLEL = 1;
+
+	public static final int TEXT = 0;
+	public static final int BINARY = 1;
+
+	/** Collision detectors, in the order of the control applet */
+	public static final int NO_COLLISIONS = 0;
+	public static final int ALL_PARTICLES = 1;
+	public static final int SWEEP_AND_PRUNE = 2;
+	public static final int CELL_LIST = 3;
+
+	/** Collision algorithms, in the order of the control applet */
+	public static final int SIMPLE_COLLISION = 0;
+	public static final int VECTOR_TRANSFORMATION = 1;
+	public static final int MATRIX_TRANSFORMATION = 2;
+	public static final int SCALAR_MATRIX_TRANSFORMATION = 3;
+
+	/** Interpolators between particles and grid */
+	public static final int CLOUD_IN_CELL = 0;
+	public static final int CHARGE_CONSERVING_CIC = 1;
+
+	/** Either SEQUENTIAL or PARALLEL */
+	private int simulationType = SEQUENTIAL;
+
+	/** Number of worker threads, 0 means one per available processor */
+	private int threads = 0;
+
+	/** Interpolator of the simulation, the YAML file sets CHARGE_CONSERVING_CIC by default */
+	private int interpolator = CHARGE_CONSERVING_CIC;
+
+	/** Whether charge and current are deposited on several threads */
+	private boolean parallelDeposition = false;
+
+	/** Whether the FFT Poisson solver transforms on its own pool of the given number of threads */
+	private boolean parallelPoissonSolver = false;
+
+	/** Either TEXT or BINARY */
+	private int outputFormat = TEXT;
+
+	/** Whether the diagnostics are written on a separate thread */
+	private boolean asyncOutput = false;
+
+	/** Maximum number of diagnostic outputs waiting to be written */
+	private int outputQueue = 4;
+
+	/** AsyncDataOutput.BLOCK or AsyncDataOutput.DROP */
+	private int outputPolicy = AsyncDataOutput.BLOCK;
+
+	/** Number of steps between field snapshots, 0 means no snapshots */
+	private int snapshotInterval = 0;
+
+	/** Number of steps between checkpoints, 0 means no checkpoints */
+	private int checkpointInterval = 0;
+
+	/** Collision detector, -1 keeps the one of the initial conditions */
+	private int collisionDetector = -1;
+
+	/** Algorithm which resolves the detected collisions */
+	private int collisionAlgorithm = SIMPLE_COLLISION;
+
+	/** Maximal sub-cycling level of the push, 0 means no sub-cycling */
+	private int subcyclingLevels = 0;
+
+	/** Maximal displacement of a particle per sub-step in cells */
+	private double courant = 0.5;
+
+	/** Maximal rotation of a velocity by the magnetic field per sub-step */
+	private double maxRotation = 0.1;
+
+	/** Number of steps between two sorts of the particles by cell, 0 means never */
+	private int sortInterval = 0;
+
+	/** ParticleSorter.CELL_ORDER or ParticleSorter.MORTON_ORDER */
+	private int sortOrder = ParticleSorter.CELL_ORDER;
+
+	/** Number of tiles of the grid in each direction, 1 x 1 x 1 means no tiling */
+	private int tilesX = 1;
+	private int tilesY = 1;
+	private int tilesZ = 1;
+
+	/** Number of worker processes, 1 means that the run stays in this process */
+	private int ranks = 1;
+
+	public int getSimulationType() {
+		return simulationType;
+	}
+
+	public void setSimulationType(int simulationType) {
+		this.simulationType = simulationType;
+	}
+
+	/**
+	 * Number of threads used in parallel runs. If no number has been set,
+	 * one thread per available processor is used.
+	 */
+	public int getThreads() {
+		if (threads > 0) {
+			return threads;
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public boolean isParallel() {
+		return simulationType == PARALLEL;
+	}
+
+	public int getInterpolator() {
+		return interpolator;
+	}
+
+	public void setInterpolator(int interpolator) {
+		this.interpolator = interpolator;
+	}
+
+	public boolean isParallelDeposition() {
+		return parallelDeposition;
+	}
+
+	public void setParallelDeposition(boolean parallelDeposition) {
+		this.parallelDeposition = parallelDeposition;
+	}
+
+	public int getOutputFormat() {
+		return outputFormat;
+	}
+
+	public void setOutputFormat(int outputFormat) {
+		this.outputFormat = outputFormat;
+	}
+
+	public boolean isAsyncOutput() {
+		return asyncOutput;
+	}
+
+	public void setAsyncOutput(boolean asyncOutput) {
+		this.asyncOutput = asyncOutput;
+	}
+
+	public int getOutputQueue() {
+		return outputQueue;
+	}
+
+	public void setOutputQueue(int outputQueue) {
+		this.outputQueue = outputQueue;
+	}
+
+	public int getOutputPolicy() {
+		return outputPolicy;
+	}
+
+	public void setOutputPolicy(int outputPolicy) {
+		this.outputPolicy = outputPolicy;
+	}
+
+	public int getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+	public void setSnapshotInterval(int snapshotInterval) {
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	public int getCollisionDetector() {
+		return collisionDetector;
+	}
+
+	public void setCollisionDetector(int collisionDetector) {
+		this.collisionDetector = collisionDetector;
+	}
+
+	public int getCollisionAlgorithm() {
+		return collisionAlgorithm;
+	}
+
+	public void setCollisionAlgorithm(int collisionAlgorithm) {
+		this.collisionAlgorithm = collisionAlgorithm;
+	}
+
+	public int getSubcyclingLevels() {
+		return subcyclingLevels;
+	}
+
+	public void setSubcyclingLevels(int subcyclingLevels) {
+		this.subcyclingLevels = subcyclingLevels;
+	}
+
+	public boolean isSubcycling() {
+		return subcyclingLevels > 0;
+	}
+
+	public double getCourant() {
+		return courant;
+	}
+
+	public void setCourant(double courant) {
+		this.courant = courant;
+	}
+
+	public double getMaxRotation() {
+		return maxRotation;
+	}
+
+	public void setMaxRotation(double maxRotation) {
+		this.maxRotation = maxRotation;
+	}
+
+	public int getSortInterval() {
+		return sortInterval;
+	}
+
+	public void setSortInterval(int sortInterval) {
+		this.sortInterval = sortInterval;
+	}
+
+	public boolean isSorting() {
+		return sortInterval > 0;
+	}
+
+	public int getSortOrder() {
+		return sortOrder;
+	}
+
+	public void setSortOrder(int sortOrder) {
+		this.sortOrder = sortOrder;
+	}
+
+	public int getTilesX() {
+		return tilesX;
+	}
+
+	public int getTilesY() {
+		return tilesY;
+	}
+
+	public int getTilesZ() {
+		return tilesZ;
+	}
+
+	public void setTiles(int tilesX, int tilesY, int tilesZ) {
+		this.tilesX = tilesX;
+		this.tilesY = tilesY;
+		this.tilesZ = tilesZ;
+	}
+
+	public boolean isTiled() {
+		return tilesX * tilesY * tilesZ > 1;
+	}
+
+	public int getRanks() {
+		return ranks;
+	}
+
+	public void setRanks(int ranks) {
+		this.ranks = ranks;
+	}
+
+	public boolean isMultiProcess() {
+		return ranks > 1;
+	}
+
+	public boolean isParallelPoissonSolver() {
+		return parallelPoissonSolver;
+	}
+
+	public void setParallelPoissonSolver(boolean parallelPoissonSolver) {
+		this.parallelPoissonSolver = parallelPoissonSolver;
+	}
+}
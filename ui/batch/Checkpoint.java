@@ -0,0 +1,412 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package ui.batch;
+
+import java.awt.Color;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import physics.Simulation;
+import physics.grid.Grid;
+import physics.grid.Tile;
+import physics.movement.boundary.ParticleBoundaryType;
+import physics.particles.Particle;
+import physics.particles.ParticleArrays;
+import physics.particles.ParticleFull;
+
+/**
+ * Binary checkpoint of the state of a simulation, so that a batch run
+ * can be stopped and resumed.
+ *
+ * The particles are stored exactly as they are between two steps, i.e.
+ * with the half-step velocities and accelerations which the solver has
+ * set up in prepareAllParticles() and with the previous positions from
+ * which a charge conserving interpolator deposits the current. The fields
+ * at the particles are not stored: they are gathered again from the
+ * restored grid, which has not changed since they were gathered at the
+ * end of the last step. A restored simulation therefore continues with
+ * step() without preparing the particles again.
+ *
+ * Layout (little-endian):
+ * <pre>
+ * int     magic number "PXCP", version
+ * int     iteration
+ * double  tottime, tstep
+ * int     length of the boundary type name, followed by its UTF-8 bytes
+ * int     nx, ny, nz
+ * long    number of particles
+ * per particle: double x, y, z, prevX, prevY, prevZ, vx, vy, vz, ax, ay, az,
+ *               mass, charge, radius;
+ *               int color (ARGB, 0 if the particle has no color)
+ * per field Ex, Ey, Ez, Bx, By, Bz, Jx, Jy, Jz, rho, phi:
+ *               double values of the cells (i, j, k) with k running fastest
+ * </pre>
+ */
+public class Checkpoint {
+
+	public static final int MAGIC = 0x50435850; // "PXCP" in little-endian byte order
+	public static final int VERSION = 2;
+
+	/** Size of a particle record */
+	private static final int PARTICLE_SIZE = 15 * 8 + 4;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/** Number of grid quantities, numbered as in getField() */
+	static final int FIELDS = 11;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private FileChannel channel;
+
+	/** Reused for all reads and writes */
+	private ByteBuffer buffer;
+
+	/** Header of a checkpoint which is restored */
+	private int version;
+	private int iteration;
+	private double tottime, tstep;
+	private byte[] boundary;
+	private int nx, ny, nz;
+	private long count;
+
+	private Checkpoint(FileChannel channel) {
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Writes the state of the simulation. The checkpoint is first written to
+	 * a temporary file which then replaces the given file, so that an earlier
+	 * checkpoint survives if the run dies while writing.
+	 */
+	public static void write(Simulation s, int iteration, File file) throws IOException {
+		File temporary = new File(file.getPath() + ".tmp");
+		FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try {
+			new Checkpoint(channel).write(s, iteration);
+		} finally {
+			channel.close();
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Restores the state of a simulation which has been set up with the same
+	 * grid as the one that has been checkpointed. The particles of the
+	 * simulation are replaced.
+	 * @return the iteration in which the checkpoint was written
+	 */
+	public static int restore(Simulation s, File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return new Checkpoint(channel).restore(s);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Restores the part of a checkpoint which a worker of a multi-process
+	 * run needs into a simulation whose grid holds only the slab and its
+	 * guard layers, see {@link Tile#useLocalGrid()}. The particles outside
+	 * of the slab are skipped while they are read, so that the worker never
+	 * holds all of them. The particles are put into the slab, not into the
+	 * simulation.
+	 * @return the iteration in which the checkpoint was written
+	 */
+	static int restoreSlab(Simulation s, File file, Tile slab) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return new Checkpoint(channel).restoreSlab(s, slab);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/** Number of grid cells in x, y and z direction of a checkpoint. */
+	static int[] readNumCells(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			Checkpoint checkpoint = new Checkpoint(channel);
+			checkpoint.readHeader();
+			return new int[] {checkpoint.nx, checkpoint.ny, checkpoint.nz};
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void write(Simulation s, int iteration) throws IOException {
+		Grid g = s.grid;
+		byte[] boundary = s.getParticleMover().getBoundaryType().name().getBytes(UTF8);
+
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(iteration);
+		buffer.putDouble(s.tottime);
+		buffer.putDouble(s.tstep);
+		buffer.putInt(boundary.length);
+		buffer.put(boundary);
+		buffer.putInt(g.getNumCellsX());
+		buffer.putInt(g.getNumCellsY());
+		buffer.putInt(g.getNumCellsZ());
+		buffer.putLong(s.particles.size());
+
+		for (Particle p : s.particles) {
+			ensureSpace(PARTICLE_SIZE);
+			buffer.putDouble(p.getX());
+			buffer.putDouble(p.getY());
+			buffer.putDouble(p.getZ());
+			buffer.putDouble(p.getPrevX());
+			buffer.putDouble(p.getPrevY());
+			buffer.putDouble(p.getPrevZ());
+			buffer.putDouble(p.getVx());
+			buffer.putDouble(p.getVy());
+			buffer.putDouble(p.getVz());
+			buffer.putDouble(p.getAx());
+			buffer.putDouble(p.getAy());
+			buffer.putDouble(p.getAz());
+			buffer.putDouble(p.getMass());
+			buffer.putDouble(p.getCharge());
+			buffer.putDouble(p.getRadius());
+			buffer.putInt(p.getColor() != null ? p.getColor().getRGB() : 0);
+		}
+
+		for (int f = 0; f < FIELDS; f++) {
+			for (int i = 0; i < g.getNumCellsX(); i++) {
+				for (int j = 0; j < g.getNumCellsY(); j++) {
+					for (int k = 0; k < g.getNumCellsZ(); k++) {
+						ensureSpace(8);
+						buffer.putDouble(getField(g, f, i, j, k));
+					}
+				}
+			}
+		}
+		flush();
+	}
+
+	private int restore(Simulation s) throws IOException {
+		Grid g = s.grid;
+		readHeader();
+		if (nx != g.getNumCellsX() || ny != g.getNumCellsY() || nz != g.getNumCellsZ()) {
+			throw new IOException("The checkpoint has a grid of " + nx + "x" + ny + "x" + nz
+					+ " cells, the simulation one of " + g.getNumCellsX() + "x"
+					+ g.getNumCellsY() + "x" + g.getNumCellsZ() + " cells");
+		}
+
+		s.particles.clear();
+		s.particles.ensureCapacity((int) count);
+		for (long n = 0; n < count; n++) {
+			s.particles.add(readParticle());
+		}
+
+		for (int f = 0; f < FIELDS; f++) {
+			for (int i = 0; i < nx; i++) {
+				for (int j = 0; j < ny; j++) {
+					for (int k = 0; k < nz; k++) {
+						fill(8);
+						setField(g, f, i, j, k, buffer.getDouble());
+					}
+				}
+			}
+		}
+
+		restoreRun(s);
+		// The first push needs the fields which the last step gathered
+		s.interpolation.interpolateToParticle(s.particles, s.grid);
+		return iteration;
+	}
+
+	private int restoreSlab(Simulation s, Tile slab) throws IOException {
+		Grid g = s.grid;
+		readHeader();
+		if (slab.x0 + slab.nx > nx || ny != g.getNumCellsY() || nz != g.getNumCellsZ()
+				|| g.getNumCellsX() != slab.sizeX) {
+			throw new IOException("The checkpoint has a grid of " + nx + "x" + ny + "x" + nz
+					+ " cells, which does not contain the slab of the worker");
+		}
+
+		double width = nx * g.getCellWidth();
+		double height = ny * g.getCellHeight();
+		double depth = (nz > 1) ? nz * g.getCellDepth() : 0;
+		ParticleArrays record = new ParticleArrays(1);
+		for (long n = 0; n < count; n++) {
+			Particle p = readParticle();
+			record.clear();
+			record.add(p);
+			record.wrap(width, height, depth);
+			if (slab.ownsX(RankCoordinator.cellX(nx, g.getCellWidth(), record.x[0]))) {
+				slab.add(record, 0, record.createParticle(0));
+			}
+		}
+
+		for (int f = 0; f < FIELDS; f++) {
+			for (int i = 0; i < nx; i++) {
+				for (int j = 0; j < ny; j++) {
+					for (int k = 0; k < nz; k++) {
+						fill(8);
+						double value = buffer.getDouble();
+						// Small grids may contain a cell in both guard layers
+						int local = ((i - slab.x0 + Tile.GUARD) % nx + nx) % nx;
+						for (; local < slab.sizeX; local += nx) {
+							setField(g, f, local, j, k, value);
+						}
+					}
+				}
+			}
+		}
+
+		restoreRun(s);
+		return iteration;
+	}
+
+	/** Reads the header up to the number of particles. */
+	private void readHeader() throws IOException {
+		buffer.limit(0);
+
+		fill(4 * 4 + 2 * 8);
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("Not a checkpoint file");
+		}
+		version = buffer.getInt();
+		if (version != 1 && version != VERSION) {
+			throw new IOException("Unsupported checkpoint version " + version);
+		}
+		iteration = buffer.getInt();
+		tottime = buffer.getDouble();
+		tstep = buffer.getDouble();
+		boundary = new byte[buffer.getInt()];
+		fill(boundary.length + 3 * 4 + 8);
+		buffer.get(boundary);
+
+		nx = buffer.getInt();
+		ny = buffer.getInt();
+		nz = buffer.getInt();
+		count = buffer.getLong();
+	}
+
+	private Particle readParticle() throws IOException {
+		// Version 1 has no previous positions
+		fill((version == 1) ? PARTICLE_SIZE - 3 * 8 : PARTICLE_SIZE);
+		Particle p = new ParticleFull();
+		p.setX(buffer.getDouble());
+		p.setY(buffer.getDouble());
+		p.setZ(buffer.getDouble());
+		if (version == 1) {
+			p.setPrevX(p.getX());
+			p.setPrevY(p.getY());
+			p.setPrevZ(p.getZ());
+		} else {
+			p.setPrevX(buffer.getDouble());
+			p.setPrevY(buffer.getDouble());
+			p.setPrevZ(buffer.getDouble());
+		}
+		p.setVx(buffer.getDouble());
+		p.setVy(buffer.getDouble());
+		p.setVz(buffer.getDouble());
+		p.setAx(buffer.getDouble());
+		p.setAy(buffer.getDouble());
+		p.setAz(buffer.getDouble());
+		p.setMass(buffer.getDouble());
+		p.setCharge(buffer.getDouble());
+		p.setRadius(buffer.getDouble());
+		int rgb = buffer.getInt();
+		p.setColor(rgb != 0 ? new Color(rgb, true) : null);
+		return p;
+	}
+
+	/** Sets the time and the boundaries of the simulation from the header. */
+	private void restoreRun(Simulation s) {
+		s.tottime = tottime;
+		s.tstep = tstep;
+		s.getParticleMover().changeBoundaryType(
+				ParticleBoundaryType.valueOf(new String(boundary, UTF8)));
+	}
+
+	/** Writes the buffer to the file if less than the given number of bytes are left. */
+	private void ensureSpace(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/** Reads from the file until at least the given number of bytes are available. */
+	private void fill(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes) {
+			return;
+		}
+		buffer.compact();
+		while (buffer.position() < bytes) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("Checkpoint file is truncated");
+			}
+		}
+		buffer.flip();
+	}
+
+	static double getField(Grid g, int field, int i, int j, int k) {
+		switch (field) {
+		case 0: return g.getEx(i, j, k);
+		case 1: return g.getEy(i, j, k);
+		case 2: return g.getEz(i, j, k);
+		case 3: return g.getBx(i, j, k);
+		case 4: return g.getBy(i, j, k);
+		case 5: return g.getBz(i, j, k);
+		case 6: return g.getJx(i, j, k);
+		case 7: return g.getJy(i, j, k);
+		case 8: return g.getJz(i, j, k);
+		case 9: return g.getRho(i, j, k);
+		default: return g.getPhi(i, j, k);
+		}
+	}
+
+	static void setField(Grid g, int field, int i, int j, int k, double value) {
+		switch (field) {
+		case 0: g.setEx(i, j, k, value); break;
+		case 1: g.setEy(i, j, k, value); break;
+		case 2: g.setEz(i, j, k, value); break;
+		case 3: g.setBx(i, j, k, value); break;
+		case 4: g.setBy(i, j, k, value); break;
+		case 5: g.setBz(i, j, k, value); break;
+		case 6: g.setJx(i, j, k, value); break;
+		case 7: g.setJy(i, j, k, value); break;
+		case 8: g.setJz(i, j, k, value); break;
+		case 9: g.setRho(i, j, k, value); break;
+		default: g.setPhi(i, j, k, value); break;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package ui.batch;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+
+import physics.particles.ParticleArrays;
+
+/**
+ * Connection between the coordinator and one worker process, or between
+ * two neighbouring worker processes, of a multi-process run. Values are written in little-endian byte order
+ * through a direct buffer, which is sent when it is full or on
+ * {@link #flush()}.
+ *
+ * The protocol has no message tags: both sides know from the command
+ * which data follows.
+ */
+class RankChannel {
+
+	/** Commands of the coordinator */
+	static final int STEP = 1;
+	static final int COLLECT = 2;
+	static final int STOP = 3;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/** Doubles and one int per particle */
+	private static final int PARTICLE_SIZE = 9 * 8 + 4;
+
+	private SocketChannel channel;
+
+	private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	private ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	RankChannel(SocketChannel channel) throws IOException {
+		this.channel = channel;
+		channel.socket().setTcpNoDelay(true);
+		in.flip();
+	}
+
+	void writeInt(int value) throws IOException {
+		reserve(4);
+		out.putInt(value);
+	}
+
+	int readInt() throws IOException {
+		require(4);
+		return in.getInt();
+	}
+
+	/** Writes the first n values of the array. */
+	void writeDoubles(double[] values, int n) throws IOException {
+		writeDoubles(values, 0, n);
+	}
+
+	/** Writes n values of the array starting at index from. */
+	void writeDoubles(double[] values, int from, int n) throws IOException {
+		int i = from;
+		while (i < from + n) {
+			reserve(8);
+			int count = Math.min(from + n - i, out.remaining() / 8);
+			out.asDoubleBuffer().put(values, i, count);
+			out.position(out.position() + 8 * count);
+			i += count;
+		}
+	}
+
+	/** Reads n values into the beginning of the array. */
+	void readDoubles(double[] values, int n) throws IOException {
+		readDoubles(values, 0, n);
+	}
+
+	/** Reads n values into the array starting at index from. */
+	void readDoubles(double[] values, int from, int n) throws IOException {
+		int i = from;
+		while (i < from + n) {
+			require(8);
+			int count = Math.min(from + n - i, in.remaining() / 8);
+			in.asDoubleBuffer().get(values, i, count);
+			in.position(in.position() + 8 * count);
+			i += count;
+		}
+	}
+
+	/** Writes the number of particles followed by their properties. */
+	void writeParticles(ParticleArrays p) throws IOException {
+		writeInt(p.size());
+		for (int i = 0; i < p.size(); i++) {
+			reserve(PARTICLE_SIZE);
+			out.putDouble(p.x[i]);
+			out.putDouble(p.y[i]);
+			out.putDouble(p.z[i]);
+			out.putDouble(p.vx[i]);
+			out.putDouble(p.vy[i]);
+			out.putDouble(p.vz[i]);
+			out.putDouble(p.charge[i]);
+			out.putDouble(p.mass[i]);
+			out.putDouble(p.radius[i]);
+			out.putInt(p.color[i]);
+		}
+	}
+
+	/** Reads particles written by {@link #writeParticles} and appends them. */
+	void readParticles(ParticleArrays p) throws IOException {
+		int n = readInt();
+		p.ensureCapacity(p.size() + n);
+		for (int i = 0; i < n; i++) {
+			require(PARTICLE_SIZE);
+			p.add(in.getDouble(), in.getDouble(), in.getDouble(),
+					in.getDouble(), in.getDouble(), in.getDouble(),
+					in.getDouble(), in.getDouble(), in.getDouble(), in.getInt());
+		}
+	}
+
+	/** Sends everything written so far. */
+	void flush() throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+	/** Makes room for the given number of bytes in the output buffer. */
+	private void reserve(int bytes) throws IOException {
+		if (out.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	/** Receives data until the given number of bytes can be read. */
+	private void require(int bytes) throws IOException {
+		if (in.remaining() >= bytes) {
+			return;
+		}
+		in.compact();
+		while (in.position() < bytes) {
+			if (channel.read(in) < 0) {
+				throw new EOFException("Connection to the other process closed.");
+			}
+		}
+		in.flip();
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package ui.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import physics.Simulation;
+import physics.grid.Grid;
+import physics.grid.Tile;
+import physics.particles.ParticleArrays;
+
+/**
+ * Runs a simulation on several cooperating JVM processes on the same
+ * machine.
+ *
+ * The coordinator writes a checkpoint of the initial state and launches
+ * one {@link RankWorker} process per rank, which restores the checkpoint
+ * and keeps the particles of its slab of grid cells in x direction. The
+ * workers exchange particles and guard layers with the workers of the
+ * neighbouring slabs over loopback TCP connections, see
+ * {@link RankWorker}. The coordinator only tells them to step and waits
+ * until all of them have finished the step.
+ *
+ * The particles and the grid quantities are only sent to the coordinator
+ * by {@link #collect}. Until then its simulation keeps the state of the
+ * last collection.
+ *
+ * The workers compute the non-relativistic Boris scheme in the grid fields
+ * with cloud-in-cell weights and know nothing about collisions, so the
+ * simulation has to be set up in the same way.
+ */
+public class RankCoordinator {
+
+	/** Time to wait for the workers to connect in milliseconds */
+	private static final int CONNECT_TIMEOUT = 120000;
+
+	private Simulation s;
+
+	private int ranks;
+
+	private Process[] processes;
+
+	private RankChannel[] channels;
+
+	/** Geometry of each slab */
+	private Tile[] slabs;
+
+	/** Number of particles which changed their slab in the last step */
+	private int migrated;
+
+	public RankCoordinator(Simulation s, BatchSettings settings) {
+		int ranks = settings.getRanks();
+		if (ranks < 2) {
+			// Every rank exchanges with a neighbour other than itself
+			throw new RuntimeException("Running on several processes needs at least two ranks.");
+		}
+		if (ranks > s.grid.getNumCellsX()) {
+			throw new RuntimeException("There can be at most one rank per grid cell in x direction.");
+		}
+		SimulationStepper.requireColumnarKernels(s, settings, "Running on several processes");
+		if (SimulationStepper.hasCollisions(s)) {
+			throw new RuntimeException("Running on several processes does not support collisions"
+					+ " (collisions: none).");
+		}
+		if (settings.isSubcycling()) {
+			throw new RuntimeException("Running on several processes does not support subcycling"
+					+ " (subcycling: 0).");
+		}
+		if (settings.isSorting()) {
+			throw new RuntimeException("Running on several processes does not support sorting the particles"
+					+ " (sort: 0).");
+		}
+		this.s = s;
+		this.ranks = ranks;
+		slabs = new Tile[ranks];
+		for (int r = 0; r < ranks; r++) {
+			slabs[r] = createSlab(s.grid, r, ranks);
+		}
+	}
+
+	/**
+	 * Launches the worker processes with the same JVM options and class path
+	 * as this process, waits until all of them are connected and tells
+	 * every worker where to reach its right neighbour.
+	 * @param settingsfile settings file of the run, may be null
+	 * @param checkpoint checkpoint of the initial state
+	 */
+	public void start(String settingsfile, File checkpoint) throws IOException {
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		server.socket().setSoTimeout(CONNECT_TIMEOUT);
+		int port = server.socket().getLocalPort();
+
+		processes = new Process[ranks];
+		for (int r = 0; r < ranks; r++) {
+			List<String> command = new ArrayList<String>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+				// A debugger can only be attached to one process
+				if (!option.startsWith("-agentlib:jdwp")) {
+					command.add(option);
+				}
+			}
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add("ui.MainBatch");
+			if (settingsfile != null) {
+				command.add(settingsfile);
+			}
+			command.add("--worker");
+			command.add(Integer.toString(r));
+			command.add(Integer.toString(ranks));
+			command.add(Integer.toString(port));
+			command.add(checkpoint.getPath());
+			processes[r] = new ProcessBuilder(command).inheritIO().start();
+		}
+
+		channels = new RankChannel[ranks];
+		int[] ports = new int[ranks];
+		try {
+			for (int c = 0; c < ranks; c++) {
+				RankChannel channel = new RankChannel(server.socket().accept().getChannel());
+				int rank = channel.readInt();
+				ports[rank] = channel.readInt();
+				channels[rank] = channel;
+			}
+		} catch (SocketTimeoutException e) {
+			destroy();
+			throw new IOException("Not all worker processes have connected.", e);
+		} finally {
+			server.close();
+		}
+
+		for (int r = 0; r < ranks; r++) {
+			channels[r].writeInt(ports[(r + 1) % ranks]);
+			channels[r].flush();
+		}
+	}
+
+	/** Advances the simulation by one time step. */
+	public void step() throws IOException {
+		for (RankChannel channel : channels) {
+			channel.writeInt(RankChannel.STEP);
+			channel.flush();
+		}
+
+		migrated = 0;
+		for (RankChannel channel : channels) {
+			migrated += channel.readInt();
+		}
+
+		s.tottime += s.tstep;
+	}
+
+	/**
+	 * Replaces the particles and the grid quantities of the simulation by
+	 * the current ones of all workers, e.g. before diagnostics or a
+	 * checkpoint.
+	 */
+	public void collect() throws IOException {
+		for (RankChannel channel : channels) {
+			channel.writeInt(RankChannel.COLLECT);
+			channel.flush();
+		}
+		ParticleArrays all = new ParticleArrays(s.particles.size());
+		for (int r = 0; r < ranks; r++) {
+			channels[r].readParticles(all);
+			readSlab(channels[r], slabs[r]);
+		}
+		s.particles.clear();
+		for (int i = 0; i < all.size(); i++) {
+			s.particles.add(all.createParticle(i));
+		}
+	}
+
+	/** Number of particles which changed their slab in the last step. */
+	public int getMigrated() {
+		return migrated;
+	}
+
+	/** Stops the workers and waits for them to exit. */
+	public void close() throws IOException, InterruptedException {
+		for (RankChannel channel : channels) {
+			channel.writeInt(RankChannel.STOP);
+			channel.close();
+		}
+		for (Process process : processes) {
+			process.waitFor();
+		}
+	}
+
+	private void destroy() {
+		for (Process process : processes) {
+			process.destroy();
+		}
+	}
+
+	/** Reads the grid quantities of the cells of a slab, as written by the worker. */
+	private void readSlab(RankChannel channel, Tile slab) throws IOException {
+		double[] values = new double[slab.nx * slab.ny * slab.nz];
+		for (int f = 0; f < Checkpoint.FIELDS; f++) {
+			channel.readDoubles(values, values.length);
+			int index = 0;
+			for (int i = slab.x0; i < slab.x0 + slab.nx; i++) {
+				for (int j = 0; j < slab.ny; j++) {
+					for (int k = 0; k < slab.nz; k++) {
+						Checkpoint.setField(s.grid, f, i, j, k, values[index++]);
+					}
+				}
+			}
+		}
+	}
+
+	/** The slab of grid cells in x direction which belongs to the given rank. */
+	static Tile createSlab(Grid g, int rank, int ranks) {
+		return createSlab(g.getNumCellsX(), g.getNumCellsY(), g.getNumCellsZ(), rank, ranks);
+	}
+
+	/** The slab of a grid of the given number of cells which belongs to the given rank. */
+	static Tile createSlab(int cellsX, int cellsY, int cellsZ, int rank, int ranks) {
+		int x0 = (int) ((long) cellsX * rank / ranks);
+		int x1 = (int) ((long) cellsX * (rank + 1) / ranks);
+		return new Tile(x0, 0, 0, x1 - x0, cellsY, cellsZ);
+	}
+
+	/** Cell index in x direction of the given position, clamped to a grid of cellsX cells. */
+	static int cellX(int cellsX, double cellWidth, double x) {
+		int i = (int) Math.floor(x / cellWidth);
+		return Math.max(0, Math.min(i, cellsX - 1));
+	}
+}
@@ -0,0 +1,404 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package ui.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+import physics.Settings;
+import physics.Simulation;
+import physics.grid.Tile;
+import physics.particles.ParticleArrays;
+import physics.solver.BorisVector;
+
+/**
+ * Worker process of a multi-process run started by {@link RankCoordinator}.
+ *
+ * The worker owns the particles of one slab of grid cells in x direction
+ * and is connected to the workers of the slabs on its left and on its
+ * right, with periodic wrap-around. Every step it
+ * <ol>
+ * <li>pushes its particles with the Boris scheme and hands those which
+ * have left the slab to the neighbour whose slab they have entered,</li>
+ * <li>deposits its current and charge density, sends the guard layers in
+ * x direction to the neighbours and adds the ones it receives to the
+ * boundary layers of its slab,</li>
+ * <li>solves the fields on its grid, which holds only the slab and its
+ * guard layers, and receives the guard layers of the new fields from the
+ * neighbours,</li>
+ * <li>gathers the fields for its particles and reports to the coordinator.</li>
+ * </ol>
+ * Only the layers next to the slab boundaries are exchanged. This needs a
+ * field solver whose stencil reaches at most {@link Tile#GUARD} cells,
+ * like the finite-difference solver, and particles which move at most
+ * into the neighbouring slab in one step.
+ *
+ * The worker reads only its own particles and layers from the checkpoint,
+ * so that its memory and its field solve scale with the size of the slab.
+ */
+public class RankWorker {
+
+	/** Simulation whose grid holds the slab and its guard layers */
+	private Simulation s;
+
+	/** Number of cells in x direction of the whole grid */
+	private int numCellsX;
+
+	/** Size of the whole simulation box */
+	private double width, height, depth;
+
+	private int rank;
+
+	private int ranks;
+
+	/** Connection to the coordinator */
+	private RankChannel channel;
+
+	/** Connections to the workers of the slabs on the left and on the right */
+	private RankChannel left, right;
+
+	private Tile slab;
+
+	/** Slabs of the neighbours, which decide where a leaving particle goes */
+	private Tile leftSlab, rightSlab;
+
+	private BorisVector boris = new BorisVector();
+
+	/** Particles leaving the slab to the left and to the right in a step */
+	private ParticleArrays toLeft = new ParticleArrays();
+	private ParticleArrays toRight = new ParticleArrays();
+
+	/** Particles entering the slab in a step */
+	private ParticleArrays incoming = new ParticleArrays();
+
+	/** Guard layers received from a neighbour */
+	private double[] received;
+
+	/** Values of one quantity in the cells of the slab, for the coordinator */
+	private double[] values;
+
+	/**
+	 * Sets up the grid of the slab and restores its part of the checkpoint.
+	 * @param settings settings of the run, without particles
+	 * @param checkpoint checkpoint which the coordinator has written
+	 */
+	public RankWorker(Settings settings, int rank, int ranks, File checkpoint) throws IOException {
+		this.rank = rank;
+		this.ranks = ranks;
+
+		int[] cells = Checkpoint.readNumCells(checkpoint);
+		numCellsX = cells[0];
+		slab = RankCoordinator.createSlab(cells[0], cells[1], cells[2], rank, ranks);
+		leftSlab = RankCoordinator.createSlab(cells[0], cells[1], cells[2], neighbour(-1), ranks);
+		rightSlab = RankCoordinator.createSlab(cells[0], cells[1], cells[2], neighbour(1), ranks);
+
+		double cellWidth = settings.getSimulationWidth() / numCellsX;
+		settings.setGridCellsX(slab.sizeX);
+		settings.setSimulationWidth(slab.sizeX * cellWidth);
+		settings.setNumOfParticles(0);
+		s = new Simulation(settings);
+		s.particles.clear();
+		if (s.grid.getNumCellsX() != slab.sizeX) {
+			throw new IOException("The grid of rank " + rank + " does not have the size of its slab.");
+		}
+		slab.useLocalGrid();
+		Checkpoint.restoreSlab(s, checkpoint, slab);
+
+		width = numCellsX * s.grid.getCellWidth();
+		height = s.grid.getNumCellsY() * s.grid.getCellHeight();
+		depth = (s.grid.getNumCellsZ() > 1) ? s.grid.getNumCellsZ() * s.grid.getCellDepth() : 0;
+	}
+
+	/** Connects to the coordinator and runs until it sends the stop command. */
+	public void run(int port) throws IOException {
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+		channel = new RankChannel(SocketChannel.open(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+		channel.writeInt(rank);
+		channel.writeInt(server.socket().getLocalPort());
+		channel.flush();
+
+		// Every worker connects to its right neighbour and accepts its left one
+		int rightPort = channel.readInt();
+		right = new RankChannel(SocketChannel.open(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), rightPort)));
+		right.writeInt(rank);
+		right.flush();
+		try {
+			left = new RankChannel(server.accept());
+		} finally {
+			server.close();
+		}
+		if (left.readInt() != neighbour(-1)) {
+			throw new IOException("Rank " + rank + " has been connected to the wrong neighbour.");
+		}
+
+		received = new double[Tile.GUARD * slab.getLayerSize()];
+		values = new double[slab.nx * slab.ny * slab.nz];
+
+		slab.copyFields(s.grid);
+		slab.locate(s.grid);
+		slab.gather();
+
+		while (true) {
+			int command = channel.readInt();
+			if (command == RankChannel.STEP) {
+				step();
+			} else if (command == RankChannel.COLLECT) {
+				channel.writeParticles(slab.particles);
+				writeSlab();
+				channel.flush();
+			} else {
+				channel.close();
+				left.close();
+				right.close();
+				return;
+			}
+		}
+	}
+
+	private void step() throws IOException {
+		ParticleArrays p = slab.particles;
+		boris.push(p, s.tstep);
+		p.applyBoundary(s.getParticleMover().getBoundaryType(), width, height, depth);
+		for (int i = p.size() - 1; i >= 0; i--) {
+			if (!slab.ownsX(cellX(p, i))) {
+				slab.leave(i);
+			}
+		}
+		ParticleArrays out = slab.outgoing;
+		for (int i = 0; i < out.size(); i++) {
+			int cell = cellX(out, i);
+			if (rightSlab.ownsX(cell)) {
+				toRight.add(out, i);
+			} else if (leftSlab.ownsX(cell)) {
+				toLeft.add(out, i);
+			} else {
+				throw new RuntimeException("A particle has moved further than the neighbouring slab"
+						+ " in one step, use fewer ranks or a smaller time step.");
+			}
+		}
+		int migrated = out.size();
+		out.clear();
+		slab.outgoingObjects.clear();
+
+		exchangeParticles();
+
+		slab.locate(s.grid);
+		slab.deposit();
+		exchangeCurrents();
+
+		s.grid.updateFields(s.tstep);
+		exchangeFields();
+		// The particles have not moved since the deposition
+		slab.gather();
+
+		channel.writeInt(migrated);
+		channel.flush();
+	}
+
+	private void exchangeParticles() throws IOException {
+		incoming.clear();
+		new Shift() {
+			void send(RankChannel to) throws IOException {
+				to.writeParticles(toRight);
+			}
+
+			void receive(RankChannel from) throws IOException {
+				from.readParticles(incoming);
+			}
+		}.run(right, left);
+		new Shift() {
+			void send(RankChannel to) throws IOException {
+				to.writeParticles(toLeft);
+			}
+
+			void receive(RankChannel from) throws IOException {
+				from.readParticles(incoming);
+			}
+		}.run(left, right);
+		toLeft.clear();
+		toRight.clear();
+
+		for (int i = 0; i < incoming.size(); i++) {
+			slab.add(incoming, i, incoming.createParticle(i));
+		}
+	}
+
+	/**
+	 * Sends the current and charge density of the guard layers in x
+	 * direction to the neighbours whose cells they cover, adds the ones
+	 * received to the boundary layers of the slab and writes the slab to
+	 * the grid.
+	 */
+	private void exchangeCurrents() throws IOException {
+		final double[][] arrays = {slab.jx, slab.jy, slab.jz, slab.rho};
+		final int n = received.length;
+		final int lowerGuard = 0;
+		final int firstOwned = Tile.GUARD * slab.getLayerSize();
+		final int lastOwned = slab.nx * slab.getLayerSize();
+		final int upperGuard = (Tile.GUARD + slab.nx) * slab.getLayerSize();
+
+		new Shift() {
+			void send(RankChannel to) throws IOException {
+				for (double[] a : arrays) {
+					to.writeDoubles(a, upperGuard, n);
+				}
+			}
+
+			void receive(RankChannel from) throws IOException {
+				for (double[] a : arrays) {
+					from.readDoubles(received, n);
+					add(a, firstOwned);
+				}
+			}
+		}.run(right, left);
+		new Shift() {
+			void send(RankChannel to) throws IOException {
+				for (double[] a : arrays) {
+					to.writeDoubles(a, lowerGuard, n);
+				}
+			}
+
+			void receive(RankChannel from) throws IOException {
+				for (double[] a : arrays) {
+					from.readDoubles(received, n);
+					add(a, lastOwned);
+				}
+			}
+		}.run(left, right);
+
+		// The guard layers in x direction now belong to the neighbours
+		for (double[] a : arrays) {
+			Arrays.fill(a, lowerGuard, lowerGuard + n, 0);
+			Arrays.fill(a, upperGuard, upperGuard + n, 0);
+		}
+		slab.writeCurrents(s.grid);
+		slab.addGuardCurrents(s.grid);
+	}
+
+	/**
+	 * Copies the new fields of the slab from the grid, receives those of
+	 * the guard layers from the neighbours and writes them to the grid for
+	 * the next field solve.
+	 */
+	private void exchangeFields() throws IOException {
+		slab.copyFields(s.grid);
+		final double[][] arrays = {slab.ex, slab.ey, slab.ez, slab.bx, slab.by, slab.bz};
+		final int n = received.length;
+		final int lowerGuard = 0;
+		final int firstOwned = Tile.GUARD * slab.getLayerSize();
+		final int lastOwned = slab.nx * slab.getLayerSize();
+		final int upperGuard = (Tile.GUARD + slab.nx) * slab.getLayerSize();
+
+		new Shift() {
+			void send(RankChannel to) throws IOException {
+				for (double[] a : arrays) {
+					to.writeDoubles(a, lastOwned, n);
+				}
+			}
+
+			void receive(RankChannel from) throws IOException {
+				for (double[] a : arrays) {
+					from.readDoubles(a, lowerGuard, n);
+				}
+			}
+		}.run(right, left);
+		new Shift() {
+			void send(RankChannel to) throws IOException {
+				for (double[] a : arrays) {
+					to.writeDoubles(a, firstOwned, n);
+				}
+			}
+
+			void receive(RankChannel from) throws IOException {
+				for (double[] a : arrays) {
+					from.readDoubles(a, upperGuard, n);
+				}
+			}
+		}.run(left, right);
+
+		for (int i = 0; i < Tile.GUARD; i++) {
+			slab.writeFieldLayer(s.grid, i);
+			slab.writeFieldLayer(s.grid, Tile.GUARD + slab.nx + i);
+		}
+	}
+
+	/** Adds the received values to the array starting at index from. */
+	private void add(double[] array, int from) {
+		for (int i = 0; i < received.length; i++) {
+			array[from + i] += received[i];
+		}
+	}
+
+	/** Sends all quantities of the grid in the cells of the slab to the coordinator. */
+	private void writeSlab() throws IOException {
+		for (int f = 0; f < Checkpoint.FIELDS; f++) {
+			int index = 0;
+			for (int i = Tile.GUARD; i < Tile.GUARD + slab.nx; i++) {
+				for (int j = 0; j < slab.ny; j++) {
+					for (int k = 0; k < slab.nz; k++) {
+						values[index++] = Checkpoint.getField(s.grid, f, i, j, k);
+					}
+				}
+			}
+			channel.writeDoubles(values, values.length);
+		}
+	}
+
+	/** Rank of the neighbour in the given direction. */
+	private int neighbour(int direction) {
+		return (rank + direction + ranks) % ranks;
+	}
+
+	private int cellX(ParticleArrays p, int i) {
+		return RankCoordinator.cellX(numCellsX, s.grid.getCellWidth(), p.x[i]);
+	}
+
+	/**
+	 * Sends data to the neighbour on one side and receives the same kind
+	 * of data from the neighbour on the other side. Even ranks send first
+	 * and odd ranks receive first, so that the blocking writes cannot wait
+	 * for each other all around the ring.
+	 */
+	private abstract class Shift {
+		abstract void send(RankChannel to) throws IOException;
+
+		abstract void receive(RankChannel from) throws IOException;
+
+		void run(RankChannel to, RankChannel from) throws IOException {
+			if (rank % 2 == 0) {
+				send(to);
+				to.flush();
+				receive(from);
+			} else {
+				receive(from);
+				send(to);
+				to.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,382 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package ui.batch;
+
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+
+import physics.Simulation;
+import physics.collision.algorithms.ParallelCollisionResolver;
+import physics.collision.detectors.Detector;
+import physics.collision.detectors.IncrementalSweepAndPrune;
+import physics.force.CombinedForce;
+import physics.force.ConstantForce;
+import physics.force.Force;
+import physics.force.SimpleGridForce;
+import physics.force.relativistic.SimpleGridForceRelativistic;
+import physics.grid.ParallelDeposition;
+import physics.grid.ParticleSorter;
+import physics.grid.TiledDomain;
+import physics.movement.ColumnarPusher;
+import physics.movement.ParallelParticlePusher;
+import physics.movement.SubcyclingPusher;
+import physics.solver.Boris;
+import physics.solver.BorisVector;
+import physics.solver.Solver;
+
+/**
+ * Advances a simulation phase by phase. One call to {@link #step()} does the
+ * same work as {@link Simulation#step()}, but every phase is run separately
+ * so that it can be timed by a {@link StepProfiler}.
+ */
+public class SimulationStepper {
+
+	public static final int PUSH = 0;
+	public static final int COLLISIONS = 1;
+	public static final int SORT = 2;
+	public static final int DEPOSIT = 3;
+	public static final int FIELDS = 4;
+	public static final int GATHER = 5;
+
+	public static final String[] PHASES = {
+			"push",
+			"collisions",
+			"sort",
+			"deposit",
+			"field solve",
+			"gather"};
+
+	private Simulation s;
+
+	/** Optional profiler, null if the phases are not timed */
+	private StepProfiler profiler;
+
+	/** Worker threads, null if everything runs on the calling thread */
+	private ForkJoinPool pool;
+
+	/** Pusher for parallel runs, null in sequential runs */
+	private ParallelParticlePusher pusher;
+
+	/** Pusher with adaptive sub-steps, null if all particles use the global step */
+	private SubcyclingPusher subcycling;
+
+	/**
+	 * Pusher for the vectorized Boris solver, null if the particles are
+	 * pushed one by one
+	 */
+	private ColumnarPusher columnar;
+
+	/** Collision resolution for parallel runs, null in sequential runs */
+	private ParallelCollisionResolver collisions;
+
+	/** Deposition on several threads, null if the interpolator of the simulation is used */
+	private ParallelDeposition deposition;
+
+	/** Tiles which own the particles, null if the grid is not tiled */
+	private TiledDomain domain;
+
+	/** Sorts the particles by cell, null if the order is kept */
+	private ParticleSorter sorter;
+
+	/** Number of steps between two sorts */
+	private int sortInterval;
+
+	/** Number of steps done by this stepper */
+	private int steps;
+
+	/** Number of steps right before and right after a sort whose times are compared */
+	private static final int SORT_WINDOW = 10;
+
+	/** Statistics of the sorter in nanoseconds */
+	private long sortTime;
+	private int sorts;
+	private long interpolationBeforeSort;
+	private int stepsBeforeSort;
+	private long interpolationAfterSort;
+	private int stepsAfterSort;
+
+	/** Time of deposit and gather in the window before the next sort */
+	private long pendingInterpolation;
+	private int pendingSteps;
+
+	public SimulationStepper(Simulation s) {
+		this.s = s;
+	}
+
+	/**
+	 * Creates a stepper which runs the simulation in the way described
+	 * by the batch settings.
+	 */
+	public SimulationStepper(Simulation s, BatchSettings settings) {
+		this.s = s;
+		if (settings.isParallel() || settings.isParallelDeposition() || settings.isTiled()) {
+			pool = new ForkJoinPool(settings.getThreads());
+		}
+		if (settings.isParallel()) {
+			pusher = new ParallelParticlePusher(pool);
+			collisions = new ParallelCollisionResolver(pool);
+		}
+		if (settings.isParallelDeposition()) {
+			if (settings.getInterpolator() != BatchSettings.CLOUD_IN_CELL) {
+				throw new RuntimeException("Parallel deposition needs the cloud-in-cell interpolator"
+						+ " (interpolator: cic).");
+			}
+			deposition = new ParallelDeposition(pool);
+		}
+		if (settings.isSubcycling()) {
+			subcycling = new SubcyclingPusher(settings.getSubcyclingLevels(),
+					settings.getCourant(), settings.getMaxRotation());
+			subcycling.setParallelPusher(pusher);
+		}
+		if (settings.isSorting()) {
+			sorter = new ParticleSorter(settings.getSortOrder());
+			sortInterval = settings.getSortInterval();
+		}
+		if (s.getParticleMover().getSolver() instanceof BorisVector && pusher == null
+				&& subcycling == null && getColumnarMismatch(s, settings) == null && !hasCollisions(s)) {
+			// Otherwise BorisVector pushes every particle with the Boris solver
+			columnar = new ColumnarPusher();
+		}
+		if (settings.isTiled()) {
+			requireColumnarKernels(s, settings, "Tiling");
+			if (hasCollisions(s)) {
+				throw new RuntimeException("Tiling does not support collisions (collisions: none).");
+			}
+			if (subcycling != null) {
+				throw new RuntimeException("Tiling does not support subcycling (subcycling: 0).");
+			}
+			if (sorter != null) {
+				// The tiles keep their particles apart, there is no global order to restore
+				throw new RuntimeException("Tiling does not support sorting the particles (sort: 0).");
+			}
+			domain = new TiledDomain(s.grid, settings.getTilesX(), settings.getTilesY(),
+					settings.getTilesZ(), pool);
+			domain.distribute(s.particles);
+		}
+	}
+
+	public Simulation getSimulation() {
+		return s;
+	}
+
+	public void setProfiler(StepProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	public StepProfiler getProfiler() {
+		return profiler;
+	}
+
+	/** The sub-cycling pusher, null if sub-cycling is off. */
+	public SubcyclingPusher getSubcyclingPusher() {
+		return subcycling;
+	}
+
+	/** The tiled domain, null if the grid is not tiled. */
+	public TiledDomain getTiledDomain() {
+		return domain;
+	}
+
+	/** Advance the simulation by one time step. */
+	public void step() {
+		startIteration();
+
+		if (domain != null) {
+			domain.push(s.tstep, s.getParticleMover().getBoundaryType());
+			domain.store();
+		} else if (subcycling != null) {
+			subcycling.push(s.getParticleMover(), s.particles, s.f, s.tstep, s.grid);
+		} else if (pusher != null) {
+			pusher.push(s.getParticleMover(), s.particles, s.f, s.tstep);
+		} else if (columnar != null) {
+			columnar.push(s.getParticleMover(), (BorisVector) s.getParticleMover().getSolver(),
+					s.particles, s.grid, s.tstep, s.getWidth(), s.getHeight(), s.getDepth());
+		} else {
+			s.getParticleMover().push(s.particles, s.f, s.tstep);
+		}
+		phaseDone(PUSH);
+
+		s.detector.run();
+		if (collisions != null) {
+			collisions.collide(s.collisionalgorithm, s.detector.getOverlappedPairs(),
+					s.f, s.getParticleMover().getSolver(), s.tstep);
+		} else {
+			s.collisionalgorithm.collide(s.detector.getOverlappedPairs(),
+					s.f, s.getParticleMover().getSolver(), s.tstep);
+		}
+		phaseDone(COLLISIONS);
+
+		if (sorter != null && steps % sortInterval == 0) {
+			long start = System.nanoTime();
+			sorter.sort(s.particles, s.grid);
+			sortTime += System.nanoTime() - start;
+			sorts++;
+			if (s.detector instanceof IncrementalSweepAndPrune) {
+				// Its endpoints refer to the particles by their old indices
+				((IncrementalSweepAndPrune) s.detector).particlesReordered();
+			}
+			// The steps just before count only once the new order is in place
+			interpolationBeforeSort += pendingInterpolation;
+			stepsBeforeSort += pendingSteps;
+			pendingInterpolation = 0;
+			pendingSteps = 0;
+		}
+		phaseDone(SORT);
+
+		long depositStart = System.nanoTime();
+		if (domain != null) {
+			domain.deposit();
+		} else if (deposition != null) {
+			deposition.interpolateToGrid(s.particles, s.grid);
+		} else {
+			s.interpolation.interpolateToGrid(s.particles, s.grid, s.tstep);
+		}
+		long depositTime = System.nanoTime() - depositStart;
+		phaseDone(DEPOSIT);
+
+		s.grid.updateFields(s.tstep);
+		phaseDone(FIELDS);
+
+		long gatherStart = System.nanoTime();
+		if (domain != null) {
+			domain.gather();
+		} else if (columnar != null) {
+			// The particles have not moved since the deposition
+			columnar.gather(s.particles, s.grid,
+					(deposition != null) ? deposition.getWeights() : null);
+		} else {
+			s.interpolation.interpolateToParticle(s.particles, s.grid);
+		}
+		long interpolationTime = depositTime + System.nanoTime() - gatherStart;
+		phaseDone(GATHER);
+
+		if (sorter != null && sortInterval >= 2) {
+			// Compare the steps at the end of an interval with those at its start
+			int window = Math.min(SORT_WINDOW, sortInterval / 2);
+			int position = steps % sortInterval;
+			if (position < window) {
+				interpolationAfterSort += interpolationTime;
+				stepsAfterSort++;
+			} else if (position >= sortInterval - window) {
+				pendingInterpolation += interpolationTime;
+				pendingSteps++;
+			}
+		}
+		steps++;
+
+		s.tottime += s.tstep;
+
+		endIteration();
+	}
+
+	/**
+	 * Makes sure that the simulation uses only what the kernels on particle
+	 * columns compute: the non-relativistic Boris scheme in the fields of
+	 * the grid, interpolated with cloud-in-cell weights.
+	 * @param mode option which needs the kernels, for the error message
+	 */
+	static void requireColumnarKernels(Simulation s, BatchSettings settings, String mode) {
+		String mismatch = getColumnarMismatch(s, settings);
+		if (mismatch != null) {
+			throw new RuntimeException(mode + " " + mismatch + ".");
+		}
+	}
+
+	/** What the kernels on particle columns cannot compute, null if they can run the simulation. */
+	static String getColumnarMismatch(Simulation s, BatchSettings settings) {
+		Solver solver = s.getParticleMover().getSolver();
+		if (!(solver instanceof Boris || solver instanceof BorisVector) || s.relativistic) {
+			return "needs the non-relativistic Boris solver (solver: boris, relativistic: false)";
+		}
+		if (!isGridForce(s.f)) {
+			return "supports no other forces than those of the grid";
+		}
+		if (settings.getInterpolator() != BatchSettings.CLOUD_IN_CELL) {
+			return "needs the cloud-in-cell interpolator (interpolator: cic)";
+		}
+		return null;
+	}
+
+	/** Whether the force consists of the non-relativistic grid force and vanishing constant forces. */
+	private static boolean isGridForce(Force force) {
+		if (force instanceof CombinedForce) {
+			for (Force f : ((CombinedForce) force).forces) {
+				if (!isGridForce(f)) {
+					return false;
+				}
+			}
+			return true;
+		} else if (force instanceof ConstantForce) {
+			ConstantForce c = (ConstantForce) force;
+			return c.ex == 0 && c.ey == 0 && c.bz == 0 && c.gx == 0 && c.gy == 0 && c.drag == 0;
+		}
+		return force instanceof SimpleGridForce && !(force instanceof SimpleGridForceRelativistic);
+	}
+
+	/** Whether the collision detector of the simulation finds any pairs. */
+	static boolean hasCollisions(Simulation s) {
+		return s.detector.getClass() != Detector.class;
+	}
+
+	/**
+	 * Prints the time spent sorting the particles and the mean time of
+	 * deposit and gather in the steps before and the steps after a sort.
+	 */
+	public void printSortSummary(PrintStream out) {
+		if (sorter == null || sorts == 0) {
+			return;
+		}
+		double sort = sortTime / 1000. / sorts;
+		out.println(String.format("Particle sort every %d steps: %.1f us per sort, %.1f us per step",
+				sortInterval, sort, sort / sortInterval));
+		if (stepsBeforeSort > 0 && stepsAfterSort > 0) {
+			int window = Math.min(SORT_WINDOW, sortInterval / 2);
+			double before = interpolationBeforeSort / 1000. / stepsBeforeSort;
+			double after = interpolationAfterSort / 1000. / stepsAfterSort;
+			out.println(String.format("Deposit and gather: %.1f us per step in the %d steps before a sort,"
+					+ " %.1f us in the %d steps after, %.1f us saved per step right after sorting",
+					before, window, after, window, before - after));
+		}
+	}
+
+	/** Releases the worker threads. Should be called at the end of the run. */
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	private void startIteration() {
+		if (profiler != null) {
+			profiler.startIteration();
+		}
+	}
+
+	private void phaseDone(int phase) {
+		if (profiler != null) {
+			profiler.phaseDone(phase);
+		}
+	}
+
+	private void endIteration() {
+		if (profiler != null) {
+			profiler.endIteration();
+		}
+	}
+}
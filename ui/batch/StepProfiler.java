@@ -0,0 +1,186 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package ui.batch;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Records wall time and allocated bytes of every phase of every iteration
+ * and prints a statistical summary at the end of a batch run.
+ *
+ * Allocation is measured through the per-thread allocation counter of the
+ * HotSpot JVM and therefore only covers the thread that calls
+ * {@link #phaseDone(int)}. If the JVM does not support the counter, the
+ * allocation columns are reported as "n/a".
+ */
+public class StepProfiler {
+
+	private String[] phases;
+
+	/** Wall time in nanoseconds, indexed by [phase][iteration] */
+	private long[][] time;
+
+	/** Allocated bytes, indexed by [phase][iteration] */
+	private long[][] allocation;
+
+	private int iterations;
+
+	private long lasttime;
+	private long lastallocation;
+
+	private com.sun.management.ThreadMXBean allocationbean;
+
+	/**
+	 * @param phases names of the phases in the order in which they are run
+	 */
+	public StepProfiler(String[] phases) {
+		this.phases = phases;
+		time = new long[phases.length][1024];
+		allocation = new long[phases.length][1024];
+
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			allocationbean = (com.sun.management.ThreadMXBean) bean;
+			if (allocationbean.isThreadAllocatedMemorySupported()) {
+				allocationbean.setThreadAllocatedMemoryEnabled(true);
+			} else {
+				allocationbean = null;
+			}
+		}
+	}
+
+	/** Should be called at the beginning of each iteration of the simulation */
+	public void startIteration() {
+		if (iterations == time[0].length) {
+			for (int p = 0; p < phases.length; p++) {
+				time[p] = Arrays.copyOf(time[p], 2 * iterations);
+				allocation[p] = Arrays.copyOf(allocation[p], 2 * iterations);
+			}
+		}
+		lastallocation = allocatedBytes();
+		lasttime = System.nanoTime();
+	}
+
+	/**
+	 * Should be called right after a phase has finished. The phase is charged
+	 * with everything since the previous call or since {@link #startIteration()}.
+	 */
+	public void phaseDone(int phase) {
+		long currenttime = System.nanoTime();
+		long currentallocation = allocatedBytes();
+		time[phase][iterations] = currenttime - lasttime;
+		allocation[phase][iterations] = currentallocation - lastallocation;
+		lastallocation = allocatedBytes();
+		lasttime = System.nanoTime();
+	}
+
+	/** Should be called at the end of each iteration of the simulation */
+	public void endIteration() {
+		iterations++;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public String[] getPhases() {
+		return phases;
+	}
+
+	/** Mean wall time of a phase in nanoseconds over the last {@code count} iterations. */
+	public double getMeanTime(int phase, int count) {
+		int from = Math.max(0, iterations - count);
+		if (from == iterations) {
+			return 0;
+		}
+		long sum = 0;
+		for (int i = from; i < iterations; i++) {
+			sum += time[phase][i];
+		}
+		return sum / (double) (iterations - from);
+	}
+
+	/** Prints mean, median, 99th percentile and maximum of every phase. */
+	public void printSummary(PrintStream out) {
+		out.println("Step profile over " + iterations + " iterations:");
+		out.println(String.format("%-14s %10s %10s %10s %10s %7s   %10s %10s %10s %10s",
+				"phase", "mean[us]", "p50[us]", "p99[us]", "max[us]", "share",
+				"mean[kB]", "p50[kB]", "p99[kB]", "max[kB]"));
+		if (iterations == 0) {
+			return;
+		}
+
+		long[] steptime = new long[iterations];
+		long[] stepallocation = new long[iterations];
+		for (int p = 0; p < phases.length; p++) {
+			for (int i = 0; i < iterations; i++) {
+				steptime[i] += time[p][i];
+				stepallocation[i] += allocation[p][i];
+			}
+		}
+		double totalmean = mean(steptime);
+
+		for (int p = 0; p < phases.length; p++) {
+			printRow(out, phases[p], Arrays.copyOf(time[p], iterations),
+					Arrays.copyOf(allocation[p], iterations), totalmean);
+		}
+		printRow(out, "step", steptime, stepallocation, totalmean);
+	}
+
+	private void printRow(PrintStream out, String name, long[] t, long[] a, double totalmean) {
+		double mean = mean(t);
+		String allocationcolumns;
+		if (allocationbean != null) {
+			allocationcolumns = String.format("%10.1f %10.1f %10.1f %10.1f",
+					mean(a) / 1024, percentile(a, 50) / 1024., percentile(a, 99) / 1024.,
+					percentile(a, 100) / 1024.);
+		} else {
+			allocationcolumns = String.format("%10s %10s %10s %10s", "n/a", "n/a", "n/a", "n/a");
+		}
+		out.println(String.format("%-14s %10.1f %10.1f %10.1f %10.1f %6.1f%%   %s",
+				name, mean / 1000, percentile(t, 50) / 1000., percentile(t, 99) / 1000.,
+				percentile(t, 100) / 1000., totalmean > 0 ? 100 * mean / totalmean : 0,
+				allocationcolumns));
+	}
+
+	private long allocatedBytes() {
+		if (allocationbean == null) {
+			return 0;
+		}
+		return allocationbean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static double mean(long[] values) {
+		long sum = 0;
+		for (long v : values) {
+			sum += v;
+		}
+		return sum / (double) values.length;
+	}
+
+	/** Nearest-rank percentile. Sorts the given array. */
+	private static long percentile(long[] values, int percent) {
+		Arrays.sort(values);
+		int rank = (int) Math.ceil(percent / 100. * values.length);
+		return values[Math.max(0, rank - 1)];
+	}
+}
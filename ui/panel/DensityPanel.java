@@ -0,0 +1,153 @@
+package ui.panel;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import physics.particles.ParticleArrays;
+import ui.SimulationAnimation;
+import ui.util.SimulationSnapshot;
+import ui.util.SnapshotBuffer;
+
+/**
+ * Displays the particles as a raster image in the x-y plane.
+ *
+ * The particles are counted per pixel into an int array which backs a
+ * BufferedImage, and the image is drawn in one call. This stays fast
+ * for particle counts at which drawing every particle through Java2D
+ * does not. Each pixel shows either the density on a logarithmic colour
+ * scale or the mean colour of the particles in it.
+ */
+public class DensityPanel extends AnimationPanel {
+
+	/** Whether to show the mean colour of the particles instead of the density */
+	private boolean colorBySpecies;
+
+	private BufferedImage image;
+
+	/** Pixels of the image */
+	private int[] pixels;
+
+	/** Number of particles per pixel */
+	private int[] count;
+
+	/** Sums of the color components of the particles per pixel */
+	private int[] red, green, blue;
+
+	/** Colours from zero to the largest density */
+	private static final int[] PALETTE = createPalette();
+
+	private static final int BACKGROUND = Color.white.getRGB();
+
+	/** Constructor */
+	public DensityPanel(SimulationAnimation simulationAnimation, boolean colorBySpecies) {
+		super(simulationAnimation);
+		this.colorBySpecies = colorBySpecies;
+	}
+
+	/** Display the particles */
+	public void paintComponent(Graphics graph) {
+		super.paintComponent(graph);
+
+		int width = getWidth();
+		int height = getHeight();
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		if (image == null || image.getWidth() != width || image.getHeight() != height) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			count = new int[width * height];
+			red = new int[width * height];
+			green = new int[width * height];
+			blue = new int[width * height];
+		}
+
+		SnapshotBuffer snapshots = getSimulationAnimation().getSnapshots();
+		SimulationSnapshot s = snapshots.acquire();
+		try {
+			rasterize(s, width, height);
+		} finally {
+			snapshots.release();
+		}
+
+		graph.drawImage(image, 0, 0, null);
+	}
+
+	private void rasterize(SimulationSnapshot s, int width, int height) {
+		/** Scaling factor for the displayed panel in x-direction*/
+		double sx = width / s.getWidth();
+		/** Scaling factor for the displayed panel in y-direction*/
+		double sy = height / s.getHeight();
+
+		Arrays.fill(count, 0);
+		if (colorBySpecies) {
+			Arrays.fill(red, 0);
+			Arrays.fill(green, 0);
+			Arrays.fill(blue, 0);
+		}
+
+		ParticleArrays p = s.particles;
+		for (int i = 0; i < p.size(); i++) {
+			int px = (int) (p.x[i] * sx);
+			// The y axis points upwards as in the other panels
+			int py = height - 1 - (int) (p.y[i] * sy);
+			if (px < 0 || px >= width || py < 0 || py >= height) {
+				continue;
+			}
+			int pixel = py * width + px;
+			count[pixel]++;
+			if (colorBySpecies) {
+				int rgb = p.color[i];
+				red[pixel] += (rgb >> 16) & 0xff;
+				green[pixel] += (rgb >> 8) & 0xff;
+				blue[pixel] += rgb & 0xff;
+			}
+		}
+
+		if (colorBySpecies) {
+			for (int pixel = 0; pixel < pixels.length; pixel++) {
+				int c = count[pixel];
+				if (c == 0) {
+					pixels[pixel] = BACKGROUND;
+				} else {
+					pixels[pixel] = (red[pixel] / c) << 16 | (green[pixel] / c) << 8 | (blue[pixel] / c);
+				}
+			}
+		} else {
+			int max = 0;
+			for (int pixel = 0; pixel < pixels.length; pixel++) {
+				max = Math.max(max, count[pixel]);
+			}
+			double scale = (PALETTE.length - 1) / Math.log1p(Math.max(max, 1));
+			for (int pixel = 0; pixel < pixels.length; pixel++) {
+				int c = count[pixel];
+				if (c == 0) {
+					pixels[pixel] = BACKGROUND;
+				} else {
+					pixels[pixel] = PALETTE[(int) (Math.log1p(c) * scale)];
+				}
+			}
+		}
+	}
+
+	/** Colour scale from light blue over blue and red to yellow */
+	private static int[] createPalette() {
+		Color[] stops = {new Color(0xc0, 0xd8, 0xff), Color.blue, Color.red, Color.yellow};
+		int[] palette = new int[256];
+		for (int i = 0; i < palette.length; i++) {
+			double t = i * (stops.length - 1) / (double) palette.length;
+			int stop = (int) t;
+			double f = t - stop;
+			Color a = stops[stop];
+			Color b = stops[stop + 1];
+			int r = (int) (a.getRed() + f * (b.getRed() - a.getRed()));
+			int g = (int) (a.getGreen() + f * (b.getGreen() - a.getGreen()));
+			int bl = (int) (a.getBlue() + f * (b.getBlue() - a.getBlue()));
+			palette[i] = r << 16 | g << 8 | bl;
+		}
+		return palette;
+	}
+}
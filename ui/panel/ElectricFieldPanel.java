@@ -4,9 +4,10 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 
-import physics.Simulation;
-import physics.particles.Particle;
+import physics.particles.ParticleArrays;
 import ui.SimulationAnimation;
+import ui.util.SimulationSnapshot;
+import ui.util.SnapshotBuffer;
 
 /**
  * This panel shows the one-dimensional electric field along the x-direction.
@@ -29,7 +30,16 @@ public class ElectricFieldPanel extends AnimationPanel {
 
 		super.paintComponent(graph1);
 
-		Simulation s = getSimulationAnimation().getSimulation();
+		SnapshotBuffer snapshots = getSimulationAnimation().getSnapshots();
+		SimulationSnapshot s = snapshots.acquire();
+		try {
+			paintSnapshot(graph, s);
+		} finally {
+			snapshots.release();
+		}
+	}
+
+	private void paintSnapshot(Graphics2D graph, SimulationSnapshot s) {
 		/** Scaling factor for the displayed panel in x-direction*/
 		double sx = getWidth() / s.getWidth();
 		/** Scaling factor for the displayed panel in y-direction*/
@@ -38,17 +48,17 @@ public class ElectricFieldPanel extends AnimationPanel {
 		double panelHeight = getHeight();
 
 		// Draw particles on a central line:
-		for (int i = 0; i < s.particles.size(); i++) {
-			Particle par = (Particle) s.particles.get(i);
-			graph.setColor(par.getColor());
-			double radius = par.getRadius();
+		ParticleArrays p = s.particles;
+		for (int i = 0; i < p.size(); i++) {
+			graph.setColor(s.getColor(i));
+			double radius = p.radius[i];
 			int width = (int) (2*sx*radius);
 			int height = (int) (2*sx*radius);
 			if(width > 2 && height > 2) {
-				graph.fillOval((int) (par.getX()*sx) - width/2, (int) (panelHeight/2 - height/2),  width,  height);
+				graph.fillOval((int) (p.x[i]*sx) - width/2, (int) (panelHeight/2 - height/2),  width,  height);
 			}
 			else {
-				graph.drawRect((int) (par.getX()*sx), (int) panelHeight/2, 0, 0);
+				graph.drawRect((int) (p.x[i]*sx), (int) panelHeight/2, 0, 0);
 			}
 		}
 
@@ -57,17 +67,17 @@ public class ElectricFieldPanel extends AnimationPanel {
 
 		// Draw electrid field:
 		graph.setColor(Color.black);
-		for(int k = 0; k < s.grid.getNumCellsY(); k++)
+		for(int k = 0; k < s.getNumCellsY(); k++)
 		{
 			int newPosition = 0;
 			int newValue = 0;
-			for(int i = 0; i < s.grid.getNumCellsX(); i++)
+			for(int i = 0; i < s.getNumCellsX(); i++)
 			{
 
 				int oldPosition = newPosition;
 				int oldValue = newValue;
-				newPosition = (int) (s.grid.getCellWidth() * (i + 0.5) * sx);
-				newValue = (int) (((0.5 - scaleE * s.grid.getEx(i,k,s.grid.getNumCellsZ()/2)) * panelHeight));
+				newPosition = (int) (s.getCellWidth() * (i + 0.5) * sx);
+				newValue = (int) (((0.5 - scaleE * s.getEx(i,k,s.getNumCellsZ()/2)) * panelHeight));
 
 				if (i > 0) {
 					graph.drawLine(oldPosition, oldValue,newPosition, newValue);
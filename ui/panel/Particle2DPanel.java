@@ -28,11 +28,12 @@ import java.awt.geom.AffineTransform;
 
 import javax.swing.JPanel;
 
-import physics.Simulation;
-import physics.particles.Particle;
+import physics.particles.ParticleArrays;
 import ui.SimulationAnimation;
 import ui.SimulationAnimationListener;
 import ui.util.FrameRateDetector;
+import ui.util.SimulationSnapshot;
+import ui.util.SnapshotBuffer;
 
 
 /**
@@ -81,7 +82,6 @@ public class Particle2DPanel extends AnimationPanel {
 		setBackground(Color.white);
 		graph.translate(0, this.getHeight());
 		graph.scale(1, -1);
-		double scale = 10;
 
 		if(!paint_trace)
 		{
@@ -93,40 +93,50 @@ public class Particle2DPanel extends AnimationPanel {
 			reset_trace = false;
 		}
 
-		Simulation s = getSimulationAnimation().getSimulation();
+		SnapshotBuffer snapshots = getSimulationAnimation().getSnapshots();
+		SimulationSnapshot s = snapshots.acquire();
+		try {
+			paintSnapshot(graph, s);
+		} finally {
+			snapshots.release();
+		}
+	}
+
+	private void paintSnapshot(Graphics2D graph, SimulationSnapshot s) {
+		double scale = 10;
 
 		/** Scaling factor for the displayed panel in x-direction*/
 		double sx = getWidth() / s.getWidth();
 		/** Scaling factor for the displayed panel in y-direction*/
 		double sy = getHeight() / s.getHeight();
 
-		for (int i = 0; i < s.particles.size(); i++) {
-			Particle par = (Particle) s.particles.get(i);
-			graph.setColor(par.getColor());
-			double radius = par.getRadius();//double radius = par.getRadius()*(2 - 1.9*par.getZ()/s.getDepth());
+		ParticleArrays p = s.particles;
+		for (int i = 0; i < p.size(); i++) {
+			graph.setColor(s.getColor(i));
+			double radius = p.radius[i];//double radius = p.radius[i]*(2 - 1.9*p.z[i]/s.getDepth());
 			int width = (int) (2*sx*radius);
 			int height = (int) (2*sy*radius);
 			if(width > 2 && height > 2 && !paint_trace) {
-				graph.fillOval((int) (par.getX()*sx) - width/2, (int) (par.getY()*sy) - height/2,  width,  height);
+				graph.fillOval((int) (p.x[i]*sx) - width/2, (int) (p.y[i]*sy) - height/2,  width,  height);
 			}
 			else {
-				graph.drawRect((int) (par.getX()*sx), (int) (par.getY()*sy), 0, 0);
+				graph.drawRect((int) (p.x[i]*sx), (int) (p.y[i]*sy), 0, 0);
 			}
 		}
 
 		if(drawCurrentGrid)
 		{
 			graph.setColor(Color.black);
-			for(int i = 0; i < s.grid.getNumCellsX(); i++)
-				for(int k = 0; k < s.grid.getNumCellsY(); k++)
+			for(int i = 0; i < s.getNumCellsX(); i++)
+				for(int k = 0; k < s.getNumCellsY(); k++)
 				{
-					int xstart = (int) (s.grid.getCellWidth() * (i + 0.5) * sx);
-					int xstart2 = (int)(s.grid.getCellWidth() * i * sx);
-					int ystart = (int) (s.grid.getCellHeight() * (k + 0.5) * sy);
-					int ystart2 = (int) (s.grid.getCellHeight() * k * sy);
-					//drawArrow(graph, xstart, ystart, (int) Math.round(s.grid.getJx(i,k)*sx + xstart), (int) Math.round(s.grid.getJy(i,k)*sy + ystart));
-                                        drawArrow(graph, xstart, ystart2, (int) Math.round(s.grid.getJx(i,k)*sx+xstart), ystart2, Color.BLACK);
-                                        drawArrow(graph, xstart2, ystart, xstart2, (int) Math.round(s.grid.getJy(i,k)*sy+ystart),Color.BLACK);
+					int xstart = (int) (s.getCellWidth() * (i + 0.5) * sx);
+					int xstart2 = (int)(s.getCellWidth() * i * sx);
+					int ystart = (int) (s.getCellHeight() * (k + 0.5) * sy);
+					int ystart2 = (int) (s.getCellHeight() * k * sy);
+					//drawArrow(graph, xstart, ystart, (int) Math.round(s.getJx(i,k)*sx + xstart), (int) Math.round(s.getJy(i,k)*sy + ystart));
+                                        drawArrow(graph, xstart, ystart2, (int) Math.round(s.getJx(i,k)*sx+xstart), ystart2, Color.BLACK);
+                                        drawArrow(graph, xstart2, ystart, xstart2, (int) Math.round(s.getJy(i,k)*sy+ystart),Color.BLACK);
 				}
 			//return;
 		}
@@ -134,30 +144,32 @@ public class Particle2DPanel extends AnimationPanel {
 		if(drawFields)
 		{
 			graph.setColor(Color.black);
-			for(int i = 0; i < s.grid.getNumCellsX(); i++)
-				for(int k = 0; k < s.grid.getNumCellsY(); k++)
+			for(int i = 0; i < s.getNumCellsX(); i++)
+				for(int k = 0; k < s.getNumCellsY(); k++)
 				{
-					int xstart = (int) (s.grid.getCellWidth() * (i + 0.5) * sx);
-                    int xstart2 = (int)(s.grid.getCellWidth() * i * sx);
-                    int ystart = (int) (s.grid.getCellHeight() * (k + 0.5) * sy);
-                    int ystart2 = (int) (s.grid.getCellHeight() * k * sy);
-//drawArrow(graph, xstart, ystart, (int) Math.round(scale * s.grid.getEx(i,k)*sx + xstart), (int) Math.round(scale* s.grid.getEy(i,k)*sy + ystart));
-                    drawArrow(graph, xstart, ystart2, (int) Math.round(scale*s.grid.getEx(i,k)*sx+xstart),ystart2, Color.BLACK);
-                    drawArrow(graph, xstart2, ystart, xstart2, (int) Math.round(scale*s.grid.getEy(i,k)*sy+ystart), Color.GREEN);
-                    drawArrow(graph, xstart, ystart, xstart, (int) Math.round(scale*s.grid.getBz(i,k)*sy+ystart), Color.RED);
+					int xstart = (int) (s.getCellWidth() * (i + 0.5) * sx);
+                    int xstart2 = (int)(s.getCellWidth() * i * sx);
+                    int ystart = (int) (s.getCellHeight() * (k + 0.5) * sy);
+                    int ystart2 = (int) (s.getCellHeight() * k * sy);
+//drawArrow(graph, xstart, ystart, (int) Math.round(scale * s.getEx(i,k)*sx + xstart), (int) Math.round(scale* s.getEy(i,k)*sy + ystart));
+                    drawArrow(graph, xstart, ystart2, (int) Math.round(scale*s.getEx(i,k)*sx+xstart),ystart2, Color.BLACK);
+                    drawArrow(graph, xstart2, ystart, xstart2, (int) Math.round(scale*s.getEy(i,k)*sy+ystart), Color.GREEN);
+                    drawArrow(graph, xstart, ystart, xstart, (int) Math.round(scale*s.getBz(i,k)*sy+ystart), Color.RED);
 				}
 			//return;
 		}
 
 		FrameRateDetector frameratedetector = getSimulationAnimation().getFrameRateDetector();
+		FrameRateDetector stepratedetector = getSimulationAnimation().getStepRateDetector();
 
 		if (showinfo) {
 			graph.translate(0.0, this.getHeight());
 			graph.scale(1.0, -1.0);
 			graph.setColor(darkGreen);
 			graph.drawString("Frame rate: " + frameratedetector.getRateString() + " fps", 30, 30);
-			graph.drawString("Time step: " + (float) s.tstep, 30, 50);
-			graph.drawString("Total time: " + (float) s.tottime, 30, 70);
+			graph.drawString("Step rate: " + stepratedetector.getRateString() + " steps/s", 30, 50);
+			graph.drawString("Time step: " + (float) s.getTimeStep(), 30, 70);
+			graph.drawString("Total time: " + (float) s.getTotalTime(), 30, 90);
 
 			Runtime runtime = Runtime.getRuntime();
 			long maxMemory = runtime.maxMemory();
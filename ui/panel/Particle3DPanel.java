@@ -24,9 +24,12 @@ import java.awt.Graphics2D;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import physics.Simulation;
-import physics.particles.Particle;
+import physics.particles.ParticleArrays;
 import ui.SimulationAnimation;
+import ui.util.FieldLevels;
 import ui.util.FrameRateDetector;
+import ui.util.SimulationSnapshot;
+import ui.util.SnapshotBuffer;
 import ui.util.projection.LineObject;
 import ui.util.projection.Projection;
 import ui.util.projection.Scene;
@@ -53,8 +56,9 @@ public class Particle3DPanel extends AnimationPanel {
 
 	private boolean reset_trace;
 
-	private int gridstep = 1;
-	private int gridstepadjusted = 0;
+	/** Levels of detail added because drawing took too long */
+	private int levelbias = 0;
+	private int levelbiasadjusted = 0;
 	private long currentrendertime = 0;
 
 	Color darkGreen = new Color(0x00, 0x80, 0x00);
@@ -65,6 +69,12 @@ public class Particle3DPanel extends AnimationPanel {
 	private SphereObject spheres = new SphereObject();
 	private Scene scene = new Scene();
 
+	/** Fields averaged over blocks of cells */
+	private FieldLevels fieldlevels = new FieldLevels();
+
+	/** Minimum distance of field arrows on screen in pixels */
+	private static final double MIN_ARROW_SPACING = 12;
+
 	/** Constructor */
 	public Particle3DPanel(SimulationAnimation simulationAnimation) {
 		super(simulationAnimation);
@@ -105,7 +115,6 @@ public class Particle3DPanel extends AnimationPanel {
 		setBackground(Color.white);
 		graph.translate(0, this.getHeight());
 		graph.scale(1, -1);
-		double scale = 10;
 
 		if(!paint_trace)
 		{
@@ -117,7 +126,17 @@ public class Particle3DPanel extends AnimationPanel {
 			reset_trace = false;
 		}
 
-		Simulation s = getSimulationAnimation().getSimulation();
+		SnapshotBuffer snapshots = getSimulationAnimation().getSnapshots();
+		SimulationSnapshot s = snapshots.acquire();
+		try {
+			paintSnapshot(graph, s);
+		} finally {
+			snapshots.release();
+		}
+	}
+
+	private void paintSnapshot(Graphics2D graph, SimulationSnapshot s) {
+		double scale = 10;
 
 		/** Scaling factor for the displayed panel in x-direction*/
 		double sx = getWidth() / s.getWidth();
@@ -150,65 +169,67 @@ public class Particle3DPanel extends AnimationPanel {
 
 		spheres.clear();
 
-		for (Particle p : s.particles) {
-			double x = p.getX();
-			double y = p.getY();
-			double z = p.getZ();
-			double r = p.getRadius();
-			Color color = p.getColor();
-			spheres.addSphere(x, y, z, r, color);
+		ParticleArrays p = s.particles;
+		for (int i = 0; i < p.size(); i++) {
+			spheres.addSphere(p.x[i], p.y[i], p.z[i], p.radius[i], s.getColor(i));
 		}
 
 		fields.clear();
 
-		// Adaptive gridstep based on timeout in drawing routine
+		// Adaptive level of detail based on timeout in drawing routine
 		if (scene.drawtimeout) {
-			gridstep++;
-			gridstepadjusted = 0;
+			levelbias++;
+			levelbiasadjusted = 0;
 		} else {
-			if (gridstepadjusted == 1) {
-				// First successful time measurement with new grid step
+			if (levelbiasadjusted == 1) {
+				// First successful time measurement with new level
 				currentrendertime = scene.lastrendertime;
 			} else {
 				// If suddenly rendering is more than twice as fast
 				if (currentrendertime > 2 * scene.lastrendertime) {
-					// adjust the gridstep again
-					gridstep--;
-					if (gridstep < 1) {
-						gridstep = 1;
+					// adjust the level again
+					levelbias--;
+					if (levelbias < 0) {
+						levelbias = 0;
 					}
 				}
 			}
-			gridstepadjusted++;
+			levelbiasadjusted++;
+		}
+
+		if (drawCurrentGrid || drawFields) {
+			fieldlevels.select(s, selectLevel(s) + levelbias);
+			levelbias = Math.min(levelbias, fieldlevels.getLevel());
 		}
 
 		if(drawCurrentGrid) {
-			for(int i = 0; i < s.grid.getNumCellsX(); i += gridstep) {
-				for(int k = 0; k < s.grid.getNumCellsY(); k += gridstep) {
-					for(int j = 0; j < s.grid.getNumCellsZ(); j += gridstep) {
-						double xstart = s.grid.getCellWidth() * (i + 0.5);
-						double ystart = s.grid.getCellHeight() * (k + 0.5);
-						double zstart = s.grid.getCellDepth() * (j + 0.5);
-						double jx = scale * s.grid.getJx(i,k,j);
-						double jy = scale * s.grid.getJy(i,k,j);
-						double jz = scale * s.grid.getJz(i,k,j);
-						if (combinefields) {
-							// Combine x- and y-components of current
-							fields.addLineDelta(xstart, ystart, zstart,
-									jx, jy, jz,
-									Color.BLACK);
-						} else {
-							// Show x- and y-components of current separately
-							double xstart2 = s.grid.getCellWidth() * i;
-							double ystart2 = s.grid.getCellHeight() * k;
-							fields.addLineDelta(xstart, ystart2, zstart,
-									jx, 0, 0,
-									Color.BLACK);
-							fields.addLineDelta(xstart2, ystart, zstart,
-									0, jy, 0,
-									Color.BLACK);
-							// TODO: Add z-component
-						}
+			int b = fieldlevels.getBlockSize();
+			for(int i = 0; i < fieldlevels.getNumBlocksX(); i++) {
+				for(int k = 0; k < fieldlevels.getNumBlocksY(); k++) {
+					for(int j = 0; j < fieldlevels.getNumBlocksZ(); j++) {
+						double xstart = s.getCellWidth() * center(i, b, s.getNumCellsX());
+						double ystart = s.getCellHeight() * center(k, b, s.getNumCellsY());
+						double zstart = s.getCellDepth() * center(j, b, s.getNumCellsZ());
+						double jx = scale * fieldlevels.getJx(i,k,j);
+						double jy = scale * fieldlevels.getJy(i,k,j);
+						double jz = scale * fieldlevels.getJz(i,k,j);
+						if (combinefields) {
+							// Combine x- and y-components of current
+							addArrow(xstart, ystart, zstart,
+									jx, jy, jz,
+									Color.BLACK);
+						} else {
+							// Show x- and y-components of current separately
+							double xstart2 = s.getCellWidth() * i * b;
+							double ystart2 = s.getCellHeight() * k * b;
+							addArrow(xstart, ystart2, zstart,
+									jx, 0, 0,
+									Color.BLACK);
+							addArrow(xstart2, ystart, zstart,
+									0, jy, 0,
+									Color.BLACK);
+							// TODO: Add z-component
+						}
 					}
 				}
 			}
@@ -217,40 +238,41 @@ public class Particle3DPanel extends AnimationPanel {
 		if(drawFields)
 		{
 			graph.setColor(Color.black);
-			for(int i = 0; i < s.grid.getNumCellsX(); i += gridstep) {
-				for(int k = 0; k < s.grid.getNumCellsY(); k += gridstep) {
-					for(int j = 0; j < s.grid.getNumCellsZ(); j += gridstep) {
-						double xstart = s.grid.getCellWidth() * (i + 0.5);
-						double ystart = s.grid.getCellHeight() * (k + 0.5);
-						double zstart = s.grid.getCellDepth() * (j + 0.5);
-						double ex = scale * s.grid.getEx(i,k,j);
-						double ey = scale * s.grid.getEy(i,k,j);
-						double ez = scale * s.grid.getEz(i,k,j);
-						double bx = scale * s.grid.getBx(i,k,j);
-						double by = scale * s.grid.getBy(i,k,j);
-						double bz = scale * s.grid.getBz(i,k,j);
-						if (combinefields) {
-							// Draw combined E- and B-fields
-							fields.addLineDelta(xstart, ystart, zstart,
-									ex, ey, ez,
-									Color.green);
-							fields.addLineDelta(xstart, ystart, zstart,
-									bx, by, bz,
-									Color.red);
-						} else {
-							// Draw x- and y-components of E- and B-fields separately
-							double xstart2 = s.grid.getCellWidth() * i;
-							double ystart2 = s.grid.getCellHeight() * k;
-							fields.addLineDelta(xstart, ystart2, zstart,
-									ex, 0, 0,
-									Color.green);
-							fields.addLineDelta(xstart2, ystart, zstart,
-									0, ey, 0,
-									Color.green);
-							fields.addLineDelta(xstart, ystart, zstart,
-									0, 0, bz,
-									Color.red);
-						}
+			int b = fieldlevels.getBlockSize();
+			for(int i = 0; i < fieldlevels.getNumBlocksX(); i++) {
+				for(int k = 0; k < fieldlevels.getNumBlocksY(); k++) {
+					for(int j = 0; j < fieldlevels.getNumBlocksZ(); j++) {
+						double xstart = s.getCellWidth() * center(i, b, s.getNumCellsX());
+						double ystart = s.getCellHeight() * center(k, b, s.getNumCellsY());
+						double zstart = s.getCellDepth() * center(j, b, s.getNumCellsZ());
+						double ex = scale * fieldlevels.getEx(i,k,j);
+						double ey = scale * fieldlevels.getEy(i,k,j);
+						double ez = scale * fieldlevels.getEz(i,k,j);
+						double bx = scale * fieldlevels.getBx(i,k,j);
+						double by = scale * fieldlevels.getBy(i,k,j);
+						double bz = scale * fieldlevels.getBz(i,k,j);
+						if (combinefields) {
+							// Draw combined E- and B-fields
+							addArrow(xstart, ystart, zstart,
+									ex, ey, ez,
+									Color.green);
+							addArrow(xstart, ystart, zstart,
+									bx, by, bz,
+									Color.red);
+						} else {
+							// Draw x- and y-components of E- and B-fields separately
+							double xstart2 = s.getCellWidth() * i * b;
+							double ystart2 = s.getCellHeight() * k * b;
+							addArrow(xstart, ystart2, zstart,
+									ex, 0, 0,
+									Color.green);
+							addArrow(xstart2, ystart, zstart,
+									0, ey, 0,
+									Color.green);
+							addArrow(xstart, ystart, zstart,
+									0, 0, bz,
+									Color.red);
+						}
 					}
 				}
 			}
@@ -259,14 +281,16 @@ public class Particle3DPanel extends AnimationPanel {
 		scene.paint(projection, graph);
 
 		FrameRateDetector frameratedetector = getSimulationAnimation().getFrameRateDetector();
+		FrameRateDetector stepratedetector = getSimulationAnimation().getStepRateDetector();
 
 		if (showinfo) {
 			graph.translate(0.0, this.getHeight());
 			graph.scale(1.0, -1.0);
 			graph.setColor(darkGreen);
 			graph.drawString("Frame rate: " + frameratedetector.getRateString() + " fps", 30, 30);
-			graph.drawString("Time step: " + (float) s.tstep, 30, 50);
-			graph.drawString("Total time: " + (float) s.tottime, 30, 70);
+			graph.drawString("Step rate: " + stepratedetector.getRateString() + " steps/s", 30, 50);
+			graph.drawString("Time step: " + (float) s.getTimeStep(), 30, 70);
+			graph.drawString("Total time: " + (float) s.getTotalTime(), 30, 90);
 
 			Runtime runtime = Runtime.getRuntime();
 			long maxMemory = runtime.maxMemory();
@@ -282,6 +306,52 @@ public class Particle3DPanel extends AnimationPanel {
 		}
 	}
 
+	/**
+	 * Level of the fields at which the blocks of cells in the center of
+	 * the simulation box are at least {@link #MIN_ARROW_SPACING} apart
+	 * on screen.
+	 */
+	private int selectLevel(SimulationSnapshot s) {
+		projection.project(s.getWidth()/2, s.getHeight()/2, s.getDepth()/2);
+		double cellsize = Math.min(s.getCellWidth(), s.getCellHeight());
+		if (s.getNumCellsZ() > 1) {
+			cellsize = Math.min(cellsize, s.getCellDepth());
+		}
+		if (!projection.onscreen) {
+			// The center is behind the viewer, the scale is not defined
+			return 0;
+		}
+		double pixels = projection.screenScale * projection.scale * cellsize;
+		int level = 0;
+		while (pixels * (1 << level) < MIN_ARROW_SPACING && level < 30) {
+			level++;
+		}
+		return level;
+	}
+
+	/** Center of block i of size b in units of cells, for n cells in total */
+	private static double center(int i, int b, int n) {
+		return (i * b + Math.min((i + 1) * b, n)) * 0.5;
+	}
+
+	/** Adds a field arrow if its start or its end point can be seen. */
+	private void addArrow(double x, double y, double z, double dx, double dy, double dz, Color color) {
+		if (isVisible(x, y, z) || isVisible(x + dx, y + dy, z + dz)) {
+			fields.addLineDelta(x, y, z, dx, dy, dz, color);
+		}
+	}
+
+	/** Whether a point is in front of the viewer and near the panel. */
+	private boolean isVisible(double x, double y, double z) {
+		projection.project(x, y, z);
+		if (!projection.onscreen) {
+			return false;
+		}
+		double margin = MIN_ARROW_SPACING;
+		return projection.screenX > -margin && projection.screenX < getWidth() + margin
+				&& projection.screenY > -margin && projection.screenY < getHeight() + margin;
+	}
+
 	private int mouseOldX, mouseOldY;
 
 	class MouseListener extends MouseAdapter {
@@ -4,9 +4,10 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 
-import physics.Simulation;
-import physics.particles.Particle;
+import physics.particles.ParticleArrays;
 import ui.SimulationAnimation;
+import ui.util.SimulationSnapshot;
+import ui.util.SnapshotBuffer;
 
 /**
  * This panel shows the one-dimensional phase space (x vs. vx).
@@ -27,10 +28,19 @@ public class PhaseSpacePanel extends AnimationPanel {
 
 		super.paintComponent(graph1);
 
+		SnapshotBuffer snapshots = getSimulationAnimation().getSnapshots();
+		SimulationSnapshot s = snapshots.acquire();
+		try {
+			paintSnapshot(graph, s);
+		} finally {
+			snapshots.release();
+		}
+	}
+
+	private void paintSnapshot(Graphics2D graph, SimulationSnapshot s) {
 		// scale factor for velocity
 		double scaleV = .5;
 
-		Simulation s = getSimulationAnimation().getSimulation();
 		/** Scaling factor for the displayed panel in x-direction*/
 		double sx = getWidth() / s.getWidth();
 		/** Scaling factor for the displayed panel in y-direction*/
@@ -38,18 +48,18 @@ public class PhaseSpacePanel extends AnimationPanel {
 
 		double panelHeight = getHeight();
 
-		for (int i = 0; i < s.particles.size(); i++) {
-			Particle par = (Particle) s.particles.get(i);
-			graph.setColor(par.getColor());
-			double radius = par.getRadius();
+		ParticleArrays p = s.particles;
+		for (int i = 0; i < p.size(); i++) {
+			graph.setColor(s.getColor(i));
+			double radius = p.radius[i];
 			int width = (int) (2*sx*radius);
 			int height = (int) (2*sx*radius);
-			double position = (0.5 + scaleV * par.getVx() ) * panelHeight;
+			double position = (0.5 + scaleV * p.vx[i] ) * panelHeight;
 			if(width > 2 && height > 2) {
-				graph.fillOval((int) (par.getX()*sx) - width/2, (int) position - height/2,  width,  height);
+				graph.fillOval((int) (p.x[i]*sx) - width/2, (int) position - height/2,  width,  height);
 			}
 			else {
-				graph.drawRect((int) (par.getX()*sx), (int) position, 0, 0);
+				graph.drawRect((int) (p.x[i]*sx), (int) position, 0, 0);
 			}
 		}
 
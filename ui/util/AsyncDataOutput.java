@@ -0,0 +1,262 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ui.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import diagnostics.DataOutput;
+
+/**
+ * DataOutput which hands the data to another DataOutput on a separate
+ * writer thread, so that the simulation does not wait for the disk.
+ *
+ * The potential is copied into one of a fixed number of buffers which are
+ * reused once the writer thread is done with them. If the writer falls
+ * behind, the policy decides whether the simulation waits (BLOCK) or
+ * whether the data of this step is skipped (DROP). If the writer thread
+ * fails, the next output or {@link #closeStreams()} throws its exception.
+ */
+public class AsyncDataOutput extends EmptyDataOutput {
+
+	/** Wait until the writer thread has caught up */
+	public static final int BLOCK = 0;
+	/** Skip the data if the writer thread has not caught up */
+	public static final int DROP = 1;
+
+	private static final int KINETIC_ENERGY = 0;
+	private static final int POTENTIAL = 1;
+	private static final int CLOSE = 2;
+
+	private DataOutput out;
+
+	private int policy;
+
+	/** Data waiting to be written */
+	private ArrayBlockingQueue<Entry> queue;
+
+	/** Copies of the potential which can be reused */
+	private ArrayBlockingQueue<double[][]> buffers;
+
+	/** Number of potential buffers which have been created */
+	private int allocated;
+
+	private int capacity;
+
+	private int iteration;
+
+	/** Number of entries which have been skipped with the DROP policy */
+	private volatile int dropped;
+
+	private Thread writer;
+
+	/** Exception which stopped the writer thread, null while it runs */
+	private volatile Throwable failure;
+
+	/** Time in milliseconds after which a waiting producer checks the writer again */
+	private static final long POLL_INTERVAL = 100;
+
+	/**
+	 * @param out the DataOutput which does the actual writing
+	 * @param capacity maximum number of entries waiting to be written
+	 * @param policy BLOCK or DROP
+	 */
+	public AsyncDataOutput(DataOutput out, int capacity, int policy) {
+		this.out = out;
+		this.capacity = Math.max(1, capacity);
+		this.policy = policy;
+		queue = new ArrayBlockingQueue<Entry>(this.capacity);
+		buffers = new ArrayBlockingQueue<double[][]>(this.capacity);
+
+		writer = new Thread(new Writer(), "diagnostics-writer");
+		// Does not keep the program alive if closeStreams() is never called
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public void kineticEnergy(double energy) {
+		Entry entry = new Entry(KINETIC_ENERGY, iteration);
+		entry.value = energy;
+		enqueue(entry);
+	}
+
+	public void potential(double[][] phi) {
+		double[][] copy = obtainBuffer(phi);
+		if (copy == null) {
+			dropped++;
+			return;
+		}
+		for (int i = 0; i < phi.length; i++) {
+			System.arraycopy(phi[i], 0, copy[i], 0, phi[i].length);
+		}
+		Entry entry = new Entry(POTENTIAL, iteration);
+		entry.data = copy;
+		if (!enqueue(entry)) {
+			buffers.offer(copy);
+		}
+	}
+
+	/** Should be called at the beginning of each iteration of the simulation */
+	public void setIteration(int iteration) {
+		this.iteration = iteration;
+	}
+
+	/**
+	 * Waits until all data has been written and closes the streams
+	 * of the underlying DataOutput.
+	 */
+	public void closeStreams() {
+		try {
+			put(new Entry(CLOSE, iteration));
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		checkWriter();
+		if (dropped > 0) {
+			System.err.println("Diagnostics: " + dropped + " outputs were dropped"
+					+ " because the writer could not keep up.");
+		}
+	}
+
+	/** Number of outputs which have been skipped with the DROP policy */
+	public int getDropped() {
+		return dropped;
+	}
+
+	/** @return false if the entry has been dropped */
+	private boolean enqueue(Entry entry) {
+		checkWriter();
+		if (policy == DROP) {
+			if (!queue.offer(entry)) {
+				dropped++;
+				return false;
+			}
+			return true;
+		}
+		try {
+			put(entry);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/** Waits for space in the queue as long as the writer thread runs. */
+	private void put(Entry entry) throws InterruptedException {
+		while (!queue.offer(entry, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+			checkWriter();
+		}
+	}
+
+	/** Passes an exception of the writer thread on to the simulation. */
+	private void checkWriter() {
+		Throwable t = failure;
+		if (t != null) {
+			throw new RuntimeException("Writing the diagnostics failed.", t);
+		}
+	}
+
+	/**
+	 * Returns a free buffer with the shape of phi. New buffers are created
+	 * until the capacity is reached; after that the policy applies.
+	 * @return null if the data has to be dropped
+	 */
+	private double[][] obtainBuffer(double[][] phi) {
+		double[][] buffer = buffers.poll();
+		if (buffer == null) {
+			if (allocated < capacity) {
+				allocated++;
+			} else if (policy == DROP) {
+				return null;
+			} else {
+				try {
+					checkWriter();
+					while ((buffer = buffers.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null) {
+						checkWriter();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+		}
+		if (buffer == null || !hasShape(buffer, phi)) {
+			buffer = new double[phi.length][];
+			for (int i = 0; i < phi.length; i++) {
+				buffer[i] = new double[phi[i].length];
+			}
+		}
+		return buffer;
+	}
+
+	private static boolean hasShape(double[][] buffer, double[][] phi) {
+		if (buffer.length != phi.length) {
+			return false;
+		}
+		for (int i = 0; i < phi.length; i++) {
+			if (buffer[i].length != phi[i].length) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static class Entry {
+		private int type;
+		private int iteration;
+		private double value;
+		private double[][] data;
+
+		Entry(int type, int iteration) {
+			this.type = type;
+			this.iteration = iteration;
+		}
+	}
+
+	private class Writer implements Runnable {
+		public void run() {
+			try {
+				while (true) {
+					Entry entry;
+					try {
+						entry = queue.take();
+					} catch (InterruptedException e) {
+						break;
+					}
+					if (entry.type == CLOSE) {
+						break;
+					}
+					out.setIteration(entry.iteration);
+					if (entry.type == KINETIC_ENERGY) {
+						out.kineticEnergy(entry.value);
+					} else {
+						out.potential(entry.data);
+						buffers.offer(entry.data);
+					}
+				}
+				out.closeStreams();
+			} catch (Throwable t) {
+				failure = t;
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ui.util;
+
+import physics.grid.Grid;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * DataOutput which writes the diagnostics as little-endian binary frames.
+ * Compared to {@link DataOutput} no number is converted to text.
+ *
+ * Every file starts with the magic number "PIXI" and a version.
+ *
+ * The potential file "potential-runid.bin" then contains one frame per
+ * diagnostic step:
+ * <pre>
+ * int    iteration
+ * int    nx, ny, nz     (nz is 1 for two-dimensional data)
+ * double cell width, cell height, cell depth
+ * double values[nx * ny * nz]   (column by column: index (i * ny + j) * nz + k)
+ * </pre>
+ * The kinetic energy file "kinetic-energy-runid.bin" contains records of
+ * <pre>
+ * int    iteration
+ * double energy
+ * </pre>
+ * The files can be read with {@link BinaryDataReader}.
+ */
+public class BinaryDataOutput extends EmptyDataOutput {
+
+	public static final int MAGIC = 0x49584950; // "PIXI" in little-endian byte order
+	public static final int VERSION = 1;
+
+	/** Size of the frame header of the potential file in bytes */
+	public static final int FRAME_HEADER_SIZE = 4 * 4 + 3 * 8;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private FileChannel potential;
+	private FileChannel totalKineticEnergy;
+
+	/** Reused for all writes */
+	private ByteBuffer buffer;
+
+	private double cellWidth;
+	private double cellHeight;
+	private double cellDepth;
+
+	private int iteration;
+
+	public BinaryDataOutput(String directory, String runid, Grid grid) throws IOException {
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		cellWidth = grid.getCellWidth();
+		cellHeight = grid.getCellHeight();
+		cellDepth = grid.getCellDepth();
+
+		potential = channelFactory(directory + "potential-" + runid + ".bin");
+		totalKineticEnergy = channelFactory(directory + "kinetic-energy-" + runid + ".bin");
+	}
+
+	public void potential(double[][] phi) {
+		try {
+			int nx = phi.length;
+			int ny = (nx > 0) ? phi[0].length : 0;
+			buffer.clear();
+			buffer.putInt(iteration);
+			buffer.putInt(nx);
+			buffer.putInt(ny);
+			buffer.putInt(1);
+			buffer.putDouble(cellWidth);
+			buffer.putDouble(cellHeight);
+			buffer.putDouble(cellDepth);
+			for (double[] column : phi) {
+				for (double element : column) {
+					if (buffer.remaining() < 8) {
+						flush(potential);
+					}
+					buffer.putDouble(element);
+				}
+			}
+			flush(potential);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void kineticEnergy(double energy) {
+		try {
+			buffer.clear();
+			buffer.putInt(iteration);
+			buffer.putDouble(energy);
+			flush(totalKineticEnergy);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** Should be called at the beginning of each iteration of the simulation */
+	public void setIteration(int iteration) {
+		this.iteration = iteration;
+	}
+
+	/** Should be called when no data needs to be written anymore */
+	public void closeStreams() {
+		try {
+			potential.close();
+			totalKineticEnergy.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** Opens a new file and writes the file header. */
+	public FileChannel channelFactory(String path) throws IOException {
+		FileChannel channel = new FileOutputStream(path).getChannel();
+		buffer.clear();
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		flush(channel);
+		return channel;
+	}
+
+	/** Writes the content of the buffer to the channel and clears the buffer. */
+	private void flush(FileChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
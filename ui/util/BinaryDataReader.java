@@ -0,0 +1,146 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ui.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the files written by {@link BinaryDataOutput}.
+ *
+ * Usage:
+ * <pre>
+ * BinaryDataReader reader = new BinaryDataReader(new File("potential-run.bin"));
+ * BinaryDataReader.Frame frame;
+ * while ((frame = reader.readFrame()) != null) {
+ *     ...
+ * }
+ * reader.close();
+ * </pre>
+ */
+public class BinaryDataReader {
+
+	private FileChannel channel;
+
+	private ByteBuffer buffer;
+
+	public BinaryDataReader(File file) throws IOException {
+		channel = new FileInputStream(file).getChannel();
+		buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.limit(0);
+
+		if (!fill(8)) {
+			throw new IOException(file + " is empty");
+		}
+		if (buffer.getInt() != BinaryDataOutput.MAGIC) {
+			throw new IOException(file + " is not a binary diagnostics file");
+		}
+		int version = buffer.getInt();
+		if (version != BinaryDataOutput.VERSION) {
+			throw new IOException(file + " has unsupported version " + version);
+		}
+	}
+
+	/** One frame of the potential file */
+	public static class Frame {
+		public int iteration;
+		public int nx, ny, nz;
+		public double cellWidth, cellHeight, cellDepth;
+
+		/** Values with index (i * ny + j) * nz + k */
+		public double[] values;
+
+		public double get(int i, int j, int k) {
+			return values[(i * ny + j) * nz + k];
+		}
+	}
+
+	/**
+	 * Reads the next frame of a potential file.
+	 * @return the frame or null at the end of the file
+	 */
+	public Frame readFrame() throws IOException {
+		if (!fill(BinaryDataOutput.FRAME_HEADER_SIZE)) {
+			return null;
+		}
+		Frame frame = new Frame();
+		frame.iteration = buffer.getInt();
+		frame.nx = buffer.getInt();
+		frame.ny = buffer.getInt();
+		frame.nz = buffer.getInt();
+		frame.cellWidth = buffer.getDouble();
+		frame.cellHeight = buffer.getDouble();
+		frame.cellDepth = buffer.getDouble();
+		frame.values = new double[frame.nx * frame.ny * frame.nz];
+		for (int n = 0; n < frame.values.length; n++) {
+			if (buffer.remaining() < 8 && !fill(8)) {
+				throw new EOFException("Truncated frame of iteration " + frame.iteration);
+			}
+			frame.values[n] = buffer.getDouble();
+		}
+		return frame;
+	}
+
+	/**
+	 * Reads the kinetic energy file.
+	 * @return the energies and the iterations in which they were recorded,
+	 * indexed by [record][0: iteration, 1: energy]
+	 */
+	public double[][] readEnergies() throws IOException {
+		int count = (int) ((channel.size() - 8) / 12);
+		double[][] records = new double[count][2];
+		for (int n = 0; n < count; n++) {
+			if (!fill(12)) {
+				throw new EOFException("Truncated energy record " + n);
+			}
+			records[n][0] = buffer.getInt();
+			records[n][1] = buffer.getDouble();
+		}
+		return records;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Makes sure that at least the given number of bytes is available in the buffer.
+	 * @return false at the end of the file
+	 */
+	private boolean fill(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes) {
+			return true;
+		}
+		buffer.compact();
+		while (buffer.position() < bytes) {
+			if (channel.read(buffer) < 0) {
+				buffer.flip();
+				return false;
+			}
+		}
+		buffer.flip();
+		return true;
+	}
+}
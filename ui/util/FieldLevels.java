@@ -0,0 +1,226 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package ui.util;
+
+import java.util.ArrayList;
+
+/**
+ * Fields of a snapshot averaged over blocks of cells, for drawing fewer
+ * field arrows when the cells are small on screen.
+ *
+ * Level 0 are the cells of the snapshot. On level L each block
+ * consists of up to 2^L cells in every direction, and its fields are
+ * averaged from up to eight blocks of level L - 1. The levels are
+ * computed when they are first selected and are kept until a different
+ * snapshot is selected.
+ */
+public class FieldLevels {
+
+	/** Field components */
+	private static final int EX = 0, EY = 1, EZ = 2;
+	private static final int BX = 3, BY = 4, BZ = 5;
+	private static final int JX = 6, JY = 7, JZ = 8;
+	private static final int COMPONENTS = 9;
+
+	/** Version of the snapshot from which the levels are computed */
+	private long version = -1;
+
+	/** Levels from 1 on which have been computed, with reused arrays */
+	private ArrayList<Level> levels = new ArrayList<Level>();
+
+	/** Number of valid entries in levels */
+	private int computed = 0;
+
+	private SimulationSnapshot snapshot;
+
+	private int level;
+
+	/** Blocks of the selected level, null for level 0 */
+	private Level selected;
+
+	private static class Level {
+		int numBlocksX, numBlocksY, numBlocksZ;
+		double[][] fields = new double[COMPONENTS][0];
+
+		int index(int i, int j, int k) {
+			return (i * numBlocksY + j) * numBlocksZ + k;
+		}
+	}
+
+	/**
+	 * Selects the level whose fields are returned by the getters. The
+	 * level is clamped to the range from 0 to {@link #getMaxLevel()}.
+	 * The snapshot must not change until the fields have been read.
+	 */
+	public void select(SimulationSnapshot s, int level) {
+		if (s.getVersion() != version) {
+			version = s.getVersion();
+			computed = 0;
+		}
+		snapshot = s;
+		level = Math.max(0, Math.min(level, getMaxLevel()));
+		while (computed < level) {
+			compute(computed + 1);
+			computed++;
+		}
+		this.level = level;
+		selected = (level == 0) ? null : levels.get(level - 1);
+	}
+
+	/** Level at which the whole grid is a single block. */
+	public int getMaxLevel() {
+		int n = Math.max(snapshot.getNumCellsX(),
+				Math.max(snapshot.getNumCellsY(), snapshot.getNumCellsZ()));
+		int max = 0;
+		while ((1 << max) < n) {
+			max++;
+		}
+		return max;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	/** Number of cells in each direction of a block */
+	public int getBlockSize() {
+		return 1 << level;
+	}
+
+	public int getNumBlocksX() {
+		return (selected == null) ? snapshot.getNumCellsX() : selected.numBlocksX;
+	}
+
+	public int getNumBlocksY() {
+		return (selected == null) ? snapshot.getNumCellsY() : selected.numBlocksY;
+	}
+
+	public int getNumBlocksZ() {
+		return (selected == null) ? snapshot.getNumCellsZ() : selected.numBlocksZ;
+	}
+
+	public double getEx(int i, int j, int k) {
+		return get(EX, i, j, k);
+	}
+
+	public double getEy(int i, int j, int k) {
+		return get(EY, i, j, k);
+	}
+
+	public double getEz(int i, int j, int k) {
+		return get(EZ, i, j, k);
+	}
+
+	public double getBx(int i, int j, int k) {
+		return get(BX, i, j, k);
+	}
+
+	public double getBy(int i, int j, int k) {
+		return get(BY, i, j, k);
+	}
+
+	public double getBz(int i, int j, int k) {
+		return get(BZ, i, j, k);
+	}
+
+	public double getJx(int i, int j, int k) {
+		return get(JX, i, j, k);
+	}
+
+	public double getJy(int i, int j, int k) {
+		return get(JY, i, j, k);
+	}
+
+	public double getJz(int i, int j, int k) {
+		return get(JZ, i, j, k);
+	}
+
+	private double get(int component, int i, int j, int k) {
+		if (selected != null) {
+			return selected.fields[component][selected.index(i, j, k)];
+		}
+		switch (component) {
+		case EX:
+			return snapshot.getEx(i, j, k);
+		case EY:
+			return snapshot.getEy(i, j, k);
+		case EZ:
+			return snapshot.getEz(i, j, k);
+		case BX:
+			return snapshot.getBx(i, j, k);
+		case BY:
+			return snapshot.getBy(i, j, k);
+		case BZ:
+			return snapshot.getBz(i, j, k);
+		case JX:
+			return snapshot.getJx(i, j, k);
+		case JY:
+			return snapshot.getJy(i, j, k);
+		default:
+			return snapshot.getJz(i, j, k);
+		}
+	}
+
+	/** Averages the blocks of the level below. */
+	private void compute(int l) {
+		// The level below is selected while it is read
+		selected = (l == 1) ? null : levels.get(l - 2);
+		this.level = l - 1;
+		int nx = getNumBlocksX();
+		int ny = getNumBlocksY();
+		int nz = getNumBlocksZ();
+
+		if (levels.size() < l) {
+			levels.add(new Level());
+		}
+		Level target = levels.get(l - 1);
+		target.numBlocksX = (nx + 1) / 2;
+		target.numBlocksY = (ny + 1) / 2;
+		target.numBlocksZ = (nz + 1) / 2;
+		int size = target.numBlocksX * target.numBlocksY * target.numBlocksZ;
+		for (int c = 0; c < COMPONENTS; c++) {
+			if (target.fields[c].length != size) {
+				target.fields[c] = new double[size];
+			}
+		}
+
+		for (int i = 0; i < target.numBlocksX; i++) {
+			int i1 = Math.min(2 * i + 2, nx);
+			for (int j = 0; j < target.numBlocksY; j++) {
+				int j1 = Math.min(2 * j + 2, ny);
+				for (int k = 0; k < target.numBlocksZ; k++) {
+					int k1 = Math.min(2 * k + 2, nz);
+					int index = target.index(i, j, k);
+					int count = (i1 - 2 * i) * (j1 - 2 * j) * (k1 - 2 * k);
+					for (int c = 0; c < COMPONENTS; c++) {
+						double sum = 0;
+						for (int ii = 2 * i; ii < i1; ii++) {
+							for (int jj = 2 * j; jj < j1; jj++) {
+								for (int kk = 2 * k; kk < k1; kk++) {
+									sum += get(c, ii, jj, kk);
+								}
+							}
+						}
+						target.fields[c][index] = sum / count;
+					}
+				}
+			}
+		}
+	}
+}
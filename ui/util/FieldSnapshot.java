@@ -0,0 +1,234 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ui.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import physics.grid.Grid;
+
+/**
+ * Snapshot of all grid fields in one memory-mapped file.
+ *
+ * The layout is fixed so that other tools can map the file and use the
+ * fields without copying. All numbers are little-endian.
+ * <pre>
+ * offset  type       content
+ *      0  int        magic number "PXFS"
+ *      4  int        version
+ *      8  int        iteration
+ *     12  int        nx
+ *     16  int        ny
+ *     20  int        nz
+ *     24  int        number of fields (11)
+ *     28  int        reserved
+ *     32  double     cell width
+ *     40  double     cell height
+ *     48  double     cell depth
+ *     56  double     reserved
+ *     64  double[]   fields, each nx * ny * nz values
+ * </pre>
+ * The fields follow each other in the order phi, Ex, Ey, Ez, Bx, By, Bz,
+ * Jx, Jy, Jz, rho. Field f starts at byte 64 + f * nx * ny * nz * 8 and
+ * the value of cell (i, j, k) has the index (i * ny + j) * nz + k.
+ */
+public class FieldSnapshot {
+
+	public static final int MAGIC = 0x53465850; // "PXFS" in little-endian byte order
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 64;
+
+	public static final int PHI = 0;
+	public static final int EX = 1;
+	public static final int EY = 2;
+	public static final int EZ = 3;
+	public static final int BX = 4;
+	public static final int BY = 5;
+	public static final int BZ = 6;
+	public static final int JX = 7;
+	public static final int JY = 8;
+	public static final int JZ = 9;
+	public static final int RHO = 10;
+
+	public static final String[] FIELDS = {
+		"phi", "Ex", "Ey", "Ez", "Bx", "By", "Bz", "Jx", "Jy", "Jz", "rho"
+	};
+
+	private int iteration;
+	private int nx, ny, nz;
+	private double cellWidth, cellHeight, cellDepth;
+
+	/** Read-only views of the mapped fields */
+	private DoubleBuffer[] fields;
+
+	/**
+	 * Maps an existing snapshot file. The data is read from the file
+	 * only when it is accessed.
+	 */
+	public FieldSnapshot(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a field snapshot");
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException(file + " has unsupported version " + header.getInt(4));
+			}
+			iteration = header.getInt(8);
+			nx = header.getInt(12);
+			ny = header.getInt(16);
+			nz = header.getInt(20);
+			cellWidth = header.getDouble(32);
+			cellHeight = header.getDouble(40);
+			cellDepth = header.getDouble(48);
+
+			long size = (long) nx * ny * nz * 8;
+			fields = new DoubleBuffer[header.getInt(24)];
+			for (int f = 0; f < fields.length; f++) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+						HEADER_SIZE + f * size, size);
+				fields[f] = buffer.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+		} finally {
+			// The mappings stay valid after the channel has been closed.
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes all fields of the grid to the given file.
+	 */
+	public static void write(Grid g, File file, int iteration) throws IOException {
+		int nx = g.getNumCellsX();
+		int ny = g.getNumCellsY();
+		int nz = g.getNumCellsZ();
+		long size = (long) nx * ny * nz * 8;
+
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(iteration);
+			header.putInt(nx);
+			header.putInt(ny);
+			header.putInt(nz);
+			header.putInt(FIELDS.length);
+			header.putInt(0);
+			header.putDouble(g.getCellWidth());
+			header.putDouble(g.getCellHeight());
+			header.putDouble(g.getCellDepth());
+			header.putDouble(0);
+
+			// Each field is mapped on its own so that a single mapping
+			// stays below 2 GB.
+			for (int f = 0; f < FIELDS.length; f++) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+						HEADER_SIZE + f * size, size);
+				DoubleBuffer values = buffer.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+				for (int i = 0; i < nx; i++) {
+					for (int j = 0; j < ny; j++) {
+						for (int k = 0; k < nz; k++) {
+							values.put(getValue(g, f, i, j, k));
+						}
+					}
+				}
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	public int getIteration() {
+		return iteration;
+	}
+
+	public int getNumCellsX() {
+		return nx;
+	}
+
+	public int getNumCellsY() {
+		return ny;
+	}
+
+	public int getNumCellsZ() {
+		return nz;
+	}
+
+	public double getCellWidth() {
+		return cellWidth;
+	}
+
+	public double getCellHeight() {
+		return cellHeight;
+	}
+
+	public double getCellDepth() {
+		return cellDepth;
+	}
+
+	/**
+	 * Read-only view of one field, e.g. FieldSnapshot.EX.
+	 * The value of cell (i, j, k) has the index (i * ny + j) * nz + k.
+	 */
+	public DoubleBuffer getField(int field) {
+		return fields[field].duplicate();
+	}
+
+	public double get(int field, int i, int j, int k) {
+		return fields[field].get((i * ny + j) * nz + k);
+	}
+
+	private static double getValue(Grid g, int field, int i, int j, int k) {
+		switch (field) {
+		case PHI:
+			return g.getPhi(i, j, k);
+		case EX:
+			return g.getEx(i, j, k);
+		case EY:
+			return g.getEy(i, j, k);
+		case EZ:
+			return g.getEz(i, j, k);
+		case BX:
+			return g.getBx(i, j, k);
+		case BY:
+			return g.getBy(i, j, k);
+		case BZ:
+			return g.getBz(i, j, k);
+		case JX:
+			return g.getJx(i, j, k);
+		case JY:
+			return g.getJy(i, j, k);
+		case JZ:
+			return g.getJz(i, j, k);
+		default:
+			return g.getRho(i, j, k);
+		}
+	}
+}
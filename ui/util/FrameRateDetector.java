@@ -28,7 +28,7 @@ public class FrameRateDetector {
 	private long lastduration;
 	private long durationsum;
 	private long durationcount;
-	private double framerate;
+	private volatile double framerate;
 
 	/**
 	 * Measures the frame rate for real-time display.
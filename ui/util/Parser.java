@@ -386,6 +386,8 @@ public class Parser extends DefaultHandler {
 				alg = new Boris();
 			} else if (algname.equalsIgnoreCase("Boris Damped")) {
 				alg = new BorisDamped();
+			} else if (algname.equalsIgnoreCase("Boris Vector")) {
+				alg = new BorisVector();
 			} else if (algname.equalsIgnoreCase("Empty Solver")) {
 				alg = new EmptySolver();
 			} else if (algname.equalsIgnoreCase("Euler")) {
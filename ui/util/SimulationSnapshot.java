@@ -0,0 +1,246 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package ui.util;
+
+import java.awt.Color;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import physics.Simulation;
+import physics.grid.Grid;
+import physics.particles.ParticleArrays;
+
+/**
+ * Copy of the particles and fields of a simulation at one point in time,
+ * from which the panels paint while the simulation goes on.
+ *
+ * The field accessors have the same names and indices as those of
+ * {@link Grid}. The arrays are reused by the next {@link #capture}.
+ */
+public class SimulationSnapshot {
+
+	/** Number of captures of all snapshots so far */
+	private static final AtomicLong captures = new AtomicLong();
+
+	public final ParticleArrays particles = new ParticleArrays();
+
+	/** Distinguishes the captures, even of different simulations */
+	private long version;
+
+	private double width, height, depth;
+	private double tstep, tottime;
+	private long steps;
+
+	private int numCellsX, numCellsY, numCellsZ;
+	private double cellWidth, cellHeight, cellDepth;
+
+	/** Fields indexed by (i * numCellsY + j) * numCellsZ + k */
+	private double[] ex = new double[0];
+	private double[] ey = new double[0];
+	private double[] ez = new double[0];
+	private double[] bx = new double[0];
+	private double[] by = new double[0];
+	private double[] bz = new double[0];
+	private double[] jx = new double[0];
+	private double[] jy = new double[0];
+	private double[] jz = new double[0];
+
+	/** Color objects of the RGB values seen so far */
+	private HashMap<Integer, Color> colors = new HashMap<Integer, Color>();
+
+	/**
+	 * Copies the current state of the simulation.
+	 * @param steps number of steps done so far
+	 */
+	public void capture(Simulation s, long steps) {
+		particles.load(s.particles);
+		width = s.getWidth();
+		height = s.getHeight();
+		depth = s.getDepth();
+		tstep = s.tstep;
+		tottime = s.tottime;
+		this.steps = steps;
+		version = captures.incrementAndGet();
+
+		Grid g = s.grid;
+		numCellsX = g.getNumCellsX();
+		numCellsY = g.getNumCellsY();
+		numCellsZ = g.getNumCellsZ();
+		cellWidth = g.getCellWidth();
+		cellHeight = g.getCellHeight();
+		cellDepth = g.getCellDepth();
+		int cells = numCellsX * numCellsY * numCellsZ;
+		if (ex.length != cells) {
+			ex = new double[cells];
+			ey = new double[cells];
+			ez = new double[cells];
+			bx = new double[cells];
+			by = new double[cells];
+			bz = new double[cells];
+			jx = new double[cells];
+			jy = new double[cells];
+			jz = new double[cells];
+		}
+		for (int i = 0; i < numCellsX; i++) {
+			for (int j = 0; j < numCellsY; j++) {
+				for (int k = 0; k < numCellsZ; k++) {
+					int index = index(i, j, k);
+					ex[index] = g.getEx(i, j, k);
+					ey[index] = g.getEy(i, j, k);
+					ez[index] = g.getEz(i, j, k);
+					bx[index] = g.getBx(i, j, k);
+					by[index] = g.getBy(i, j, k);
+					bz[index] = g.getBz(i, j, k);
+					jx[index] = g.getJx(i, j, k);
+					jy[index] = g.getJy(i, j, k);
+					jz[index] = g.getJz(i, j, k);
+				}
+			}
+		}
+	}
+
+	/** Color of particle i. The same object is returned for the same color. */
+	public Color getColor(int i) {
+		Integer rgb = particles.color[i];
+		Color color = colors.get(rgb);
+		if (color == null) {
+			color = new Color(rgb);
+			colors.put(rgb, color);
+		}
+		return color;
+	}
+
+	public double getWidth() {
+		return width;
+	}
+
+	public double getHeight() {
+		return height;
+	}
+
+	public double getDepth() {
+		return depth;
+	}
+
+	public double getTimeStep() {
+		return tstep;
+	}
+
+	public double getTotalTime() {
+		return tottime;
+	}
+
+	/**
+	 * Number which is different for every capture, for caches of values
+	 * derived from the snapshot.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/** Number of steps of the simulation at the time of the snapshot. */
+	public long getSteps() {
+		return steps;
+	}
+
+	public int getNumCellsX() {
+		return numCellsX;
+	}
+
+	public int getNumCellsY() {
+		return numCellsY;
+	}
+
+	public int getNumCellsZ() {
+		return numCellsZ;
+	}
+
+	public double getCellWidth() {
+		return cellWidth;
+	}
+
+	public double getCellHeight() {
+		return cellHeight;
+	}
+
+	public double getCellDepth() {
+		return cellDepth;
+	}
+
+	public double getEx(int i, int j, int k) {
+		return ex[index(i, j, k)];
+	}
+
+	public double getEy(int i, int j, int k) {
+		return ey[index(i, j, k)];
+	}
+
+	public double getEz(int i, int j, int k) {
+		return ez[index(i, j, k)];
+	}
+
+	public double getBx(int i, int j, int k) {
+		return bx[index(i, j, k)];
+	}
+
+	public double getBy(int i, int j, int k) {
+		return by[index(i, j, k)];
+	}
+
+	public double getBz(int i, int j, int k) {
+		return bz[index(i, j, k)];
+	}
+
+	public double getJx(int i, int j, int k) {
+		return jx[index(i, j, k)];
+	}
+
+	public double getJy(int i, int j, int k) {
+		return jy[index(i, j, k)];
+	}
+
+	public double getJz(int i, int j, int k) {
+		return jz[index(i, j, k)];
+	}
+
+	/** Fields of the first layer in z direction, for 2D panels */
+	public double getEx(int i, int j) {
+		return getEx(i, j, 0);
+	}
+
+	public double getEy(int i, int j) {
+		return getEy(i, j, 0);
+	}
+
+	public double getBz(int i, int j) {
+		return getBz(i, j, 0);
+	}
+
+	public double getJx(int i, int j) {
+		return getJx(i, j, 0);
+	}
+
+	public double getJy(int i, int j) {
+		return getJy(i, j, 0);
+	}
+
+	private int index(int i, int j, int k) {
+		return (i * numCellsY + j) * numCellsZ + k;
+	}
+}
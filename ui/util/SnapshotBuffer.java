@@ -0,0 +1,75 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package ui.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import physics.Simulation;
+
+/**
+ * Two snapshots of a simulation: the front one is painted by the panels
+ * while the back one is filled by the thread which steps the simulation.
+ *
+ * The panels hold the front snapshot between {@link #acquire()} and
+ * {@link #release()}. Publishing a new snapshot never waits for them: if
+ * the front snapshot is being painted, the new one is kept in the back
+ * and replaced by the next capture.
+ */
+public class SnapshotBuffer {
+
+	private SimulationSnapshot front = new SimulationSnapshot();
+
+	private SimulationSnapshot back = new SimulationSnapshot();
+
+	private ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Captures the simulation into the back snapshot and makes it the
+	 * front one if no panel is painting.
+	 * @param steps number of steps done so far
+	 * @return whether the new snapshot has been published
+	 */
+	public boolean publish(Simulation s, long steps) {
+		back.capture(s, steps);
+		if (!lock.tryLock()) {
+			return false;
+		}
+		try {
+			SimulationSnapshot published = back;
+			back = front;
+			front = published;
+		} finally {
+			lock.unlock();
+		}
+		return true;
+	}
+
+	/**
+	 * The latest published snapshot. It stays unchanged until
+	 * {@link #release()} is called.
+	 */
+	public SimulationSnapshot acquire() {
+		lock.lock();
+		return front;
+	}
+
+	public void release() {
+		lock.unlock();
+	}
+}
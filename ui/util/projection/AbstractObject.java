@@ -1,6 +1,7 @@
 package ui.util.projection;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class AbstractObject {
 
@@ -13,4 +14,12 @@ public class AbstractObject {
 	public ArrayList<PaintObject> getObjects() {
 		return objectlist;
 	}
+
+	/** Returns the array, or a larger copy if it has less than n elements. */
+	protected static double[] ensureCapacity(double[] array, int n) {
+		if (array.length >= n) {
+			return array;
+		}
+		return Arrays.copyOf(array, Math.max(n, 2 * array.length));
+	}
 }
@@ -8,29 +8,53 @@ import java.util.ArrayList;
  * A 3D object of lines
  */
 public class LineObject extends AbstractObject {
-	private ArrayList<Point> pointlist = new ArrayList<Point>();
+	/** Number of points */
+	private int count = 0;
+
+	/** Coordinates of the points, which are projected in one batch */
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private double[] z = new double[0];
+
+	private double[] screenX = new double[0];
+	private double[] screenY = new double[0];
+	private double[] screenZ = new double[0];
+	private double[] screenScale = new double[0];
+
+	/** All lines created so far. They are reused after {@link #clear()}. */
+	private ArrayList<Line> linepool = new ArrayList<Line>();
 
 	public LineObject() {
 	}
 
 	public void clear() {
-		pointlist.clear();
+		count = 0;
 		objectlist.clear();
 	}
 
 	/** Add point to pointlist.
 	 * @return Index of point */
-	public Point addPoint(double x, double y, double z) {
-		Point p = new Point();
-		p.x = x;
-		p.y = y;
-		p.z = z;
-		pointlist.add(p);
-		return p;
+	public int addPoint(double x, double y, double z) {
+		int i = count++;
+		this.x = ensureCapacity(this.x, count);
+		this.y = ensureCapacity(this.y, count);
+		this.z = ensureCapacity(this.z, count);
+		this.x[i] = x;
+		this.y[i] = y;
+		this.z[i] = z;
+		return i;
 	}
 
-	public void addLine(Point p1, Point p2, Color color) {
-		Line l = new Line();
+	/** Add a line between the points with the given indices */
+	public void addLine(int p1, int p2, Color color) {
+		Line l;
+		int n = objectlist.size();
+		if (n < linepool.size()) {
+			l = linepool.get(n);
+		} else {
+			l = new Line();
+			linepool.add(l);
+		}
 		l.p1 = p1;
 		l.p2 = p2;
 		l.color = color;
@@ -39,8 +63,8 @@ public class LineObject extends AbstractObject {
 
 	/** Add a line from point (x1, y1, z1) to (x2, y2, z2) with color */
 	public void addLine(double x1, double y1, double z1, double x2, double y2, double z2, Color color) {
-		Point p1 = addPoint(x1, y1, z1);
-		Point p2 = addPoint(x2, y2, z2);
+		int p1 = addPoint(x1, y1, z1);
+		int p2 = addPoint(x2, y2, z2);
 		addLine(p1, p2, color);
 	}
 
@@ -50,14 +74,14 @@ public class LineObject extends AbstractObject {
 	}
 
 	public void addCuboid(double sx, double sy, double sz, Color color) {
-		Point p1 = addPoint(0, 0, 0);
-		Point p2 = addPoint(0, sy, 0);
-		Point p3 = addPoint(sx, sy, 0);
-		Point p4 = addPoint(sx, 0, 0);
-		Point p5 = addPoint(0, 0, sz);
-		Point p6 = addPoint(0, sy, sz);
-		Point p7 = addPoint(sx, sy, sz);
-		Point p8 = addPoint(sx, 0, sz);
+		int p1 = addPoint(0, 0, 0);
+		int p2 = addPoint(0, sy, 0);
+		int p3 = addPoint(sx, sy, 0);
+		int p4 = addPoint(sx, 0, 0);
+		int p5 = addPoint(0, 0, sz);
+		int p6 = addPoint(0, sy, sz);
+		int p7 = addPoint(sx, sy, sz);
+		int p8 = addPoint(sx, 0, sz);
 		addLine(p1, p2, color);
 		addLine(p2, p3, color);
 		addLine(p3, p4, color);
@@ -73,39 +97,37 @@ public class LineObject extends AbstractObject {
 	}
 
 	public void applyProjection(Projection projection) {
-		for (Point p : pointlist) {
-			projection.project(p.x, p.y, p.z);
-			p.screenX = projection.screenX;
-			p.screenY = projection.screenY;
-			p.screenZ = projection.screenZ;
-		}
-	}
-
-	public class Point {
-		double x, y, z;
-		double screenX, screenY, screenZ;
+		screenX = ensureCapacity(screenX, count);
+		screenY = ensureCapacity(screenY, count);
+		screenZ = ensureCapacity(screenZ, count);
+		screenScale = ensureCapacity(screenScale, count);
+		projection.project(x, y, z, count, screenX, screenY, screenZ, screenScale);
 	}
 
 	public class Line extends PaintObject {
-		Point p1;
-		Point p2;
+		int p1;
+		int p2;
 		Color color;
 
 		public void paint(Projection projection, Graphics2D graphics) {
-			applyProjection(projection);
-
-			double x1 = p1.screenX;
-			double y1 = p1.screenY;
-			double x2 = p2.screenX;
-			double y2 = p2.screenY;
-			Color c = color;
-			graphics.setColor(c);
+			// The points have been projected by the scene
+			if (screenScale[p1] <= 0 || screenScale[p2] <= 0) {
+				// Behind the viewer
+				return;
+			}
+			double x1 = screenX[p1];
+			double y1 = screenY[p1];
+			double x2 = screenX[p2];
+			double y2 = screenY[p2];
+			if (graphics.getColor() != color) {
+				graphics.setColor(color);
+			}
 			graphics.drawLine((int) x1, (int) y1, (int) x2, (int) y2);
 		}
 
 		public double getDistance() {
 			// Use mean distance of line
-			return -(p1.screenZ + p2.screenZ) * 0.5;
+			return -(screenZ[p1] + screenZ[p2]) * 0.5;
 		}
 	}
 }
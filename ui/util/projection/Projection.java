@@ -1,6 +1,13 @@
 package ui.util.projection;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class Projection {
+	/** Number of points from which arrays are projected in parallel,
+	 * and the size of the chunks into which they are split */
+	public static final int PARALLEL_THRESHOLD = 16384;
+
 	public double phi;
 	public double theta;
 
@@ -68,6 +75,77 @@ public class Projection {
 		}
 	}
 
+	/**
+	 * Projects the first n points of the coordinate arrays into the screen
+	 * arrays. Unlike {@link #project(double, double, double)} this does not
+	 * change the projection, so several threads may use it at once. Large
+	 * arrays are split into chunks which are projected in parallel.
+	 *
+	 * Points behind the viewer get a screen scale of 0.
+	 */
+	public void project(double[] x, double[] y, double[] z, int n,
+			double[] screenX, double[] screenY, double[] screenZ, double[] screenScale) {
+		if (n < PARALLEL_THRESHOLD) {
+			project(x, y, z, 0, n, screenX, screenY, screenZ, screenScale);
+		} else {
+			ForkJoinPool.commonPool().invoke(new ProjectTask(x, y, z, 0, n,
+					screenX, screenY, screenZ, screenScale));
+		}
+	}
+
+	private void project(double[] x, double[] y, double[] z, int from, int to,
+			double[] screenX, double[] screenY, double[] screenZ, double[] screenScale) {
+		Matrix3D m = this.m;
+		for (int i = from; i < to; i++) {
+			double xi = x[i] + deltaX;
+			double yi = y[i] + deltaY;
+			double zi = z[i] + deltaZ;
+			double rx = m.m11 * xi + m.m12 * yi + m.m13 * zi;
+			double ry = m.m21 * xi + m.m22 * yi + m.m23 * zi;
+			double rz = m.m31 * xi + m.m32 * yi + m.m33 * zi;
+			// The depth is defined behind the viewer too, as the painter sorts by it
+			screenZ[i] = rz;
+			if (rz + distance > 0) {
+				double s = screenZoom * distance / (rz + distance);
+				screenX[i] = rx * s + screenDeltaX;
+				screenY[i] = ry * s + screenDeltaY;
+				screenScale[i] = s;
+			} else {
+				screenScale[i] = 0;
+			}
+		}
+	}
+
+	private class ProjectTask extends RecursiveAction {
+		private double[] x, y, z;
+		private int from, to;
+		private double[] screenX, screenY, screenZ, screenScale;
+
+		ProjectTask(double[] x, double[] y, double[] z, int from, int to,
+				double[] screenX, double[] screenY, double[] screenZ, double[] screenScale) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.from = from;
+			this.to = to;
+			this.screenX = screenX;
+			this.screenY = screenY;
+			this.screenZ = screenZ;
+			this.screenScale = screenScale;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_THRESHOLD) {
+				project(x, y, z, from, to, screenX, screenY, screenZ, screenScale);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ProjectTask(x, y, z, from, middle, screenX, screenY, screenZ, screenScale),
+						new ProjectTask(x, y, z, middle, to, screenX, screenY, screenZ, screenScale));
+			}
+		}
+	}
+
 	private void multiplyMatrixVector(double x, double y, double z) {
 		this.x = m.m11 * x + m.m12 * y + m.m13 * z;
 		this.y = m.m21 * x + m.m22 * y + m.m23 * z;
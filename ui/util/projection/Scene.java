@@ -2,14 +2,34 @@ package ui.util.projection;
 
 import java.awt.Graphics2D;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 
 /** Scene of all objects. Sorts objects by distance
- * before painting. */
+ * before painting.
+ *
+ * The distances and the painting order are kept in primitive arrays
+ * which are reused from frame to frame. As long as the number of objects
+ * does not change, the order of the last frame is nearly sorted and is
+ * sorted again by insertion sort. */
 public class Scene {
 	private ArrayList<AbstractObject> objectlist = new ArrayList<AbstractObject>();
-	private ArrayList<Distance> distancelist = new ArrayList<Distance>();
+
+	/** Objects to be painted in the current frame */
+	private PaintObject[] objects = new PaintObject[0];
+
+	/** Distance of each object */
+	private double[] distances = new double[0];
+
+	/** Indices of the objects in order of distance */
+	private int[] order = new int[0];
+
+	/** Buffer for merge sort */
+	private int[] buffer = new int[0];
+
+	/** Number of objects in the current frame */
+	private int count = 0;
+
+	/** Moves per object after which insertion sort gives up */
+	private static final int INSERTION_SORT_LIMIT = 4;
 
 	/** Timeout of drawing operation in nanoseconds */
 	public long timeout = 100 * 1000 * 1000; // 100 ms
@@ -29,19 +49,92 @@ public class Scene {
 	}
 
 	private void createObjectList() {
-		distancelist.clear();
+		int n = 0;
 		for (AbstractObject o : objectlist) {
-			for (PaintObject p : o.getObjects()) {
-				Distance d = new Distance();
-				d.distance = p.getDistance();
-				d.object = p;
-				distancelist.add(d);
+			n += o.getObjects().size();
+		}
+		boolean coherent = (n == count);
+		if (objects.length < n) {
+			int capacity = Math.max(n, 2 * objects.length);
+			objects = new PaintObject[capacity];
+			distances = new double[capacity];
+			order = new int[capacity];
+			buffer = new int[capacity];
+		}
+		// Drop references to objects of larger frames
+		for (int i = n; i < count; i++) {
+			objects[i] = null;
+		}
+		count = n;
+
+		int i = 0;
+		for (AbstractObject o : objectlist) {
+			ArrayList<PaintObject> list = o.getObjects();
+			for (int j = 0; j < list.size(); j++) {
+				PaintObject p = list.get(j);
+				objects[i] = p;
+				distances[i] = p.getDistance();
+				i++;
+			}
+		}
+		if (!coherent) {
+			for (i = 0; i < count; i++) {
+				order[i] = i;
 			}
 		}
 	}
 
 	private void sort() {
-		Collections.sort(distancelist, new DistanceComparator());
+		if (!insertionSort()) {
+			mergeSort(0, count);
+		}
+	}
+
+	/**
+	 * Sorts the order of the last frame.
+	 * @return false if the order is too far from being sorted
+	 */
+	private boolean insertionSort() {
+		long moves = 0;
+		long limit = (long) INSERTION_SORT_LIMIT * count;
+		for (int i = 1; i < count; i++) {
+			int index = order[i];
+			double d = distances[index];
+			int j = i - 1;
+			while (j >= 0 && distances[order[j]] > d) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = index;
+			moves += i - 1 - j;
+			if (moves > limit) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Stable sort of order[from] to order[to - 1] by distance */
+	private void mergeSort(int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(from, middle);
+		mergeSort(middle, to);
+		if (distances[order[middle - 1]] <= distances[order[middle]]) {
+			return;
+		}
+		System.arraycopy(order, from, buffer, from, to - from);
+		int a = from;
+		int b = middle;
+		for (int i = from; i < to; i++) {
+			if (b >= to || (a < middle && distances[buffer[a]] <= distances[buffer[b]])) {
+				order[i] = buffer[a++];
+			} else {
+				order[i] = buffer[b++];
+			}
+		}
 	}
 
 	/** Paint all objects in order of distance */
@@ -51,9 +144,10 @@ public class Scene {
 		sort();
 		long start = System.nanoTime();
 		boolean t = false;
-		for (Distance d : distancelist) {
-			d.object.paint(projection, graphics);
-			if (System.nanoTime() - start > timeout) {
+		for (int i = 0; i < count; i++) {
+			objects[order[i]].paint(projection, graphics);
+			// Reading the clock is not free either
+			if ((i & 0xff) == 0xff && System.nanoTime() - start > timeout) {
 				t = true;
 				break;
 			}
@@ -61,16 +155,4 @@ public class Scene {
 		drawtimeout = t;
 		lastrendertime = System.nanoTime() - start;
 	}
-
-	private class Distance {
-		double distance;
-		PaintObject object;
-	}
-
-	private class DistanceComparator implements Comparator<Distance> {
-		@Override
-		public int compare(Distance s1, Distance s2) {
-			return Double.compare(s1.distance, s2.distance);
-		}
-	}
 }
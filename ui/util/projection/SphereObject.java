@@ -2,61 +2,98 @@ package ui.util.projection;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A 3D object of spheres
+ *
+ * The coordinates of the spheres are kept in arrays, so that they can be
+ * projected in one batch.
  */
 public class SphereObject extends AbstractObject {
 
+	/** Number of spheres */
+	private int count = 0;
+
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private double[] z = new double[0];
+	private double[] r = new double[0];
+	private Color[] color = new Color[0];
+
+	private double[] screenX = new double[0];
+	private double[] screenY = new double[0];
+	private double[] screenZ = new double[0];
+	private double[] screenScale = new double[0];
+
+	/** All spheres created so far. They are reused after {@link #clear()}. */
+	private ArrayList<Sphere> pool = new ArrayList<Sphere>();
+
 	public SphereObject() {
 	}
 
 	public void clear() {
 		objectlist.clear();
+		count = 0;
 	}
 
 	public void addSphere(double x, double y, double z, double r, Color color) {
-		Sphere s = new Sphere();
-		s.x = x;
-		s.y = y;
-		s.z = z;
-		s.r = r;
-		s.color = color;
-		objectlist.add(s);
+		int i = count++;
+		if (this.x.length < count) {
+			this.x = ensureCapacity(this.x, count);
+			this.y = ensureCapacity(this.y, count);
+			this.z = ensureCapacity(this.z, count);
+			this.r = ensureCapacity(this.r, count);
+			this.color = Arrays.copyOf(this.color, this.x.length);
+		}
+		this.x[i] = x;
+		this.y[i] = y;
+		this.z[i] = z;
+		this.r[i] = r;
+		this.color[i] = color;
+
+		if (i >= pool.size()) {
+			Sphere s = new Sphere();
+			s.index = i;
+			pool.add(s);
+		}
+		objectlist.add(pool.get(i));
 	}
 
 	public void applyProjection(Projection projection) {
-		for (PaintObject o : objectlist) {
-			Sphere s = (Sphere) o;
-			projection.project(s.x, s.y, s.z);
-			s.screenX = projection.screenX;
-			s.screenY = projection.screenY;
-			s.screenZ = projection.screenZ;
-			s.screenScale = projection.screenScale;
-		}
+		screenX = ensureCapacity(screenX, count);
+		screenY = ensureCapacity(screenY, count);
+		screenZ = ensureCapacity(screenZ, count);
+		screenScale = ensureCapacity(screenScale, count);
+		projection.project(x, y, z, count, screenX, screenY, screenZ, screenScale);
 	}
 
 	public class Sphere extends PaintObject {
-		double x, y, z;
-		double r;
-		Color color;
-		double screenX, screenY, screenZ, screenScale;
+		int index;
 
 		public void paint(Projection projection, Graphics2D graphics) {
-			double radius = screenScale * r;
+			int i = index;
+			if (screenScale[i] <= 0) {
+				// Behind the viewer
+				return;
+			}
+			double radius = screenScale[i] * r[i];
 			int width = (int) (2*radius);
 			int height = (int) (2*radius);
-			graphics.setColor(color);
+			if (graphics.getColor() != color[i]) {
+				graphics.setColor(color[i]);
+			}
 			if(width > 2 && height > 2) {
-				graphics.fillOval((int) (screenX) - width/2, (int) (screenY) - height/2,  width,  height);
+				graphics.fillOval((int) (screenX[i]) - width/2, (int) (screenY[i]) - height/2,  width,  height);
 			}
 			else {
-				graphics.drawRect((int) (screenX), (int) (screenY), 0, 0);
+				graphics.drawRect((int) (screenX[i]), (int) (screenY[i]), 0, 0);
 			}
 		}
 
 		public double getDistance() {
-			return -screenZ; // TODO: subtract radius?
+			return -screenZ[index]; // TODO: subtract radius?
 		}
 	}
 
@@ -1,11 +1,23 @@
 package ui.util.yaml;
 
+import diagnostics.methods.KineticEnergy;
+import diagnostics.methods.Potential;
 import physics.Settings;
+import ui.batch.BatchSettings;
+import ui.util.AsyncDataOutput;
 
 public class YamlOutput {
 	public String path;
 	public Integer daniil;
 	public Integer daniilspectrum;
+	public String format;
+	public Boolean async;
+	public Integer queue;
+	public String policy;
+	public Integer snapshot;
+	public Integer checkpoint;
+	public Integer kineticenergy;
+	public Integer potential;
 
 	public void applyTo(Settings settings) {
 		if (path != null) {
@@ -15,5 +27,52 @@ public class YamlOutput {
 		if (daniilspectrum != null) {
 			settings.setSpectrumStep(daniilspectrum);
 		}
+
+		// Intervals of the diagnostics, as in the XML settings
+		if (kineticenergy != null) {
+			settings.getDiagnostics().add(new KineticEnergy(kineticenergy));
+		}
+
+		if (potential != null) {
+			settings.getDiagnostics().add(new Potential(potential));
+		}
+	}
+
+	public void applyTo(BatchSettings settings) {
+		if (format != null) {
+			if (format.equals("text")) {
+				settings.setOutputFormat(BatchSettings.TEXT);
+			} else if (format.equals("binary")) {
+				settings.setOutputFormat(BatchSettings.BINARY);
+			} else {
+				throw new RuntimeException("Unknown output format specified in YAML file.");
+			}
+		}
+
+		if (async != null) {
+			settings.setAsyncOutput(async);
+		}
+
+		if (queue != null) {
+			settings.setOutputQueue(queue);
+		}
+
+		if (policy != null) {
+			if (policy.equals("block")) {
+				settings.setOutputPolicy(AsyncDataOutput.BLOCK);
+			} else if (policy.equals("drop")) {
+				settings.setOutputPolicy(AsyncDataOutput.DROP);
+			} else {
+				throw new RuntimeException("Unknown output policy specified in YAML file.");
+			}
+		}
+
+		if (snapshot != null) {
+			settings.setSnapshotInterval(snapshot);
+		}
+
+		if (checkpoint != null) {
+			settings.setCheckpointInterval(checkpoint);
+		}
 	}
 }
@@ -1,21 +1,49 @@
 package ui.util.yaml;
 
 import physics.Settings;
+import ui.batch.BatchSettings;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
 
 public class YamlParser {
 
 	Settings settings;
+	BatchSettings batchSettings;
+
+	/** Whether the particles and particle streams are added to the settings */
+	boolean particles = true;
 
 	public YamlParser(Settings settings) {
 		this.settings = settings;
 	}
 
+	/**
+	 * Parser which in addition fills the settings of batch runs.
+	 */
+	public YamlParser(Settings settings, BatchSettings batchSettings) {
+		this.settings = settings;
+		this.batchSettings = batchSettings;
+	}
+
+	/**
+	 * Whether the particles of the file are added to the settings, e.g. not
+	 * for processes which take them from a checkpoint.
+	 */
+	public void setParticles(boolean particles) {
+		this.particles = particles;
+	}
+
 	public void parseString (String string) {
 		Yaml yaml = new Yaml(new Constructor(YamlSettings.class));
 		YamlSettings yamlSettings = (YamlSettings) yaml.load(string);
+		if (!particles) {
+			yamlSettings.particles = null;
+			yamlSettings.streams = null;
+		}
 		yamlSettings.applyTo(settings);
+		if (batchSettings != null) {
+			yamlSettings.applyTo(batchSettings);
+		}
 	}
 
 }
@@ -3,6 +3,7 @@ package ui.util.yaml;
 import java.util.Random;
 
 import physics.Settings;
+import physics.particles.ParticleArrays;
 import physics.particles.ParticleFull;
 
 public class YamlParticleStream {
@@ -26,6 +27,9 @@ public class YamlParticleStream {
 
 	private Random random = new Random();
 
+	/** Random modifications of x, y, z, vx, vy, and vz */
+	private double[] offset = new double[6];
+
 	/**
 	 * Creates a stream of particles. The particle is copied
 	 * 'number' times. Each time, the x-, y-, and z-values are
@@ -73,53 +77,124 @@ public class YamlParticleStream {
 		}
 	}
 
+	/**
+	 * Creates the same stream of particles as {@link #applyTo(Settings)},
+	 * but stores them in primitive columns without creating particle objects.
+	 * @param particles Container to which particles are added.
+	 */
+	public void applyTo(ParticleArrays particles) {
+		double dx = 0;
+		double dy = 0;
+		double dz = 0;
+		int number = 0;
+
+		if (this.dx != null) {
+			dx = this.dx;
+		}
+
+		if (this.dy != null) {
+			dy = this.dy;
+		}
+
+		if (this.dz != null) {
+			dz = this.dz;
+		}
+
+		if (this.number != null) {
+			number = this.number;
+		}
+
+		if (this.particle != null) {
+			ParticleFull p = particle.getParticle();
+			boolean randomcolor = "random".equals(particle.color);
+			int color = 0;
+			if (p.getColor() != null) {
+				color = p.getColor().getRGB() & 0xFFFFFF;
+			}
+
+			particles.ensureCapacity(particles.size() + number);
+			for (int i = 0; i < number; i++) {
+				randomOffsets();
+				if (randomcolor) {
+					color = (int) (Math.random() * 0x1000000);
+				}
+				particles.add(
+						p.getX() + i * dx + offset[0],
+						p.getY() + i * dy + offset[1],
+						p.getZ() + i * dz + offset[2],
+						p.getVx() + offset[3],
+						p.getVy() + offset[4],
+						p.getVz() + offset[5],
+						p.getCharge(), p.getMass(), p.getRadius(), color);
+			}
+		}
+	}
+
 	private void applyRandomModifications(ParticleFull p) {
+		randomOffsets();
+		p.addX(offset[0]);
+		p.addY(offset[1]);
+		p.addZ(offset[2]);
+		p.setVx(p.getVx() + offset[3]);
+		p.setVy(p.getVy() + offset[4]);
+		p.setVz(p.getVz() + offset[5]);
+	}
+
+	/**
+	 * Draws the random modifications of x, y, z, vx, vy, and vz
+	 * into the offset array.
+	 */
+	private void randomOffsets() {
+		for (int i = 0; i < offset.length; i++) {
+			offset[i] = 0;
+		}
+
 		if (this.randomX != null) {
-			p.addX(random.nextDouble() * this.randomX);
+			offset[0] += random.nextDouble() * this.randomX;
 		}
 
 		if (this.randomY != null) {
-			p.addY(random.nextDouble() * this.randomY);
+			offset[1] += random.nextDouble() * this.randomY;
 		}
 
 		if (this.randomZ != null) {
-			p.addZ(random.nextDouble() * this.randomZ);
+			offset[2] += random.nextDouble() * this.randomZ;
 		}
 
 		if (this.randomVx != null) {
-			p.setVx(p.getVx() + random.nextDouble() * this.randomVx);
+			offset[3] += random.nextDouble() * this.randomVx;
 		}
 
 		if (this.randomVy != null) {
-			p.setVy(p.getVy() + random.nextDouble() * this.randomVy);
+			offset[4] += random.nextDouble() * this.randomVy;
 		}
 
 		if (this.randomVz != null) {
-			p.setVz(p.getVz() + random.nextDouble() * this.randomVz);
+			offset[5] += random.nextDouble() * this.randomVz;
 		}
 
 		if (this.randomGaussX != null) {
-			p.addX(random.nextGaussian() * this.randomGaussX);
+			offset[0] += random.nextGaussian() * this.randomGaussX;
 		}
 
 		if (this.randomGaussY != null) {
-			p.addY(random.nextGaussian() * this.randomGaussY);
+			offset[1] += random.nextGaussian() * this.randomGaussY;
 		}
 
 		if (this.randomGaussZ != null) {
-			p.addZ(random.nextGaussian() * this.randomGaussZ);
+			offset[2] += random.nextGaussian() * this.randomGaussZ;
 		}
 
 		if (this.randomGaussVx != null) {
-			p.setVx(p.getVx() + random.nextGaussian() * this.randomGaussVx);
+			offset[3] += random.nextGaussian() * this.randomGaussVx;
 		}
 
 		if (this.randomGaussVy != null) {
-			p.setVy(p.getVy() + random.nextGaussian() * this.randomGaussVy);
+			offset[4] += random.nextGaussian() * this.randomGaussVy;
 		}
 
 		if (this.randomGaussVz != null) {
-			p.setVz(p.getVz() + random.nextGaussian() * this.randomGaussVz);
+			offset[5] += random.nextGaussian() * this.randomGaussVz;
 		}
 	}
 }
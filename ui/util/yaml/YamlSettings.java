@@ -6,8 +6,14 @@ import physics.GeneralBoundaryType;
 import physics.Settings;
 import physics.fields.EmptyPoissonSolver;
 import physics.fields.PoissonSolverFFTPeriodic;
+import physics.fields.PoissonSolverFFTPeriodicParallel;
 import physics.fields.SimpleSolver;
 import physics.grid.ChargeConservingCIC;
+import physics.grid.CloudInCell;
+import physics.grid.ParticleSorter;
+import physics.solver.Boris;
+import physics.solver.BorisVector;
+import ui.batch.BatchSettings;
 
 /**
  * Generic settings class into which the YAML parser parses
@@ -21,6 +27,21 @@ public class YamlSettings {
 	public Integer gridCellsY;
 	public Integer gridCellsZ;
 	public String poissonsolver;
+	public String solver;
+	public Boolean relativistic;
+	public String interpolator;
+	public String simulationType;
+	public Integer threads;
+	public String deposition;
+	public String collisions;
+	public String collisionAlgorithm;
+	public Integer subcycling;
+	public Double courant;
+	public Double maxRotation;
+	public Integer sort;
+	public String sortOrder;
+	public List<Integer> tiles;
+	public Integer ranks;
 	public List<YamlParticle> particles;
 	public List<YamlParticleStream> streams;
 	public YamlOutput output;
@@ -66,6 +87,9 @@ public class YamlSettings {
 		if (poissonsolver != null) {
 			if (poissonsolver.equals("fft")) {
 				settings.setPoissonSolver(new PoissonSolverFFTPeriodic());
+			} else if (poissonsolver.equals("fft-parallel")) {
+				// Runs on the common pool, batch runs replace it by a solver with its own pool
+				settings.setPoissonSolver(new PoissonSolverFFTPeriodicParallel());
 			} else if (poissonsolver.equals("empty")) {
 				settings.setPoissonSolver(new EmptyPoissonSolver());
 			} else {
@@ -73,6 +97,32 @@ public class YamlSettings {
 			}
 		}
 
+		if (solver != null) {
+			if (solver.equals("boris")) {
+				settings.setParticleSolver(new Boris());
+			} else if (solver.equals("borisvector")) {
+				settings.setParticleSolver(new BorisVector());
+			} else {
+				throw new RuntimeException("Unknown particle solver specified in YAML file.");
+			}
+		}
+
+		if (relativistic != null) {
+			settings.setRelativistic(relativistic);
+		}
+
+		if (interpolator != null) {
+			if (getInterpolator() == BatchSettings.CLOUD_IN_CELL) {
+				settings.setInterpolator(new CloudInCell());
+			} else {
+				settings.setInterpolator(new ChargeConservingCIC());
+			}
+		}
+
+		if (simulationType != null) {
+			settings.setSimulationType(getSimulationType());
+		}
+
 		if (particles != null) {
 			for (YamlParticle p : particles) {
 				p.applyTo(settings);
@@ -89,4 +139,127 @@ public class YamlSettings {
 			output.applyTo(settings);
 		}
 	}
+
+	/**
+	 * Apply the settings which describe how a batch run is executed.
+	 */
+	public void applyTo(BatchSettings settings) {
+		if (simulationType != null) {
+			settings.setSimulationType(getSimulationType());
+		}
+
+		if (threads != null) {
+			settings.setThreads(threads);
+		}
+
+		if ("fft-parallel".equals(poissonsolver)) {
+			settings.setParallelPoissonSolver(true);
+		}
+
+		if (interpolator != null) {
+			settings.setInterpolator(getInterpolator());
+		}
+
+		if (deposition != null) {
+			if (deposition.equals("serial")) {
+				settings.setParallelDeposition(false);
+			} else if (deposition.equals("parallel")) {
+				settings.setParallelDeposition(true);
+			} else {
+				throw new RuntimeException("Unknown deposition specified in YAML file.");
+			}
+		}
+
+		if (collisions != null) {
+			if (collisions.equals("none")) {
+				settings.setCollisionDetector(BatchSettings.NO_COLLISIONS);
+			} else if (collisions.equals("all")) {
+				settings.setCollisionDetector(BatchSettings.ALL_PARTICLES);
+			} else if (collisions.equals("sweepandprune")) {
+				settings.setCollisionDetector(BatchSettings.SWEEP_AND_PRUNE);
+			} else if (collisions.equals("celllist")) {
+				settings.setCollisionDetector(BatchSettings.CELL_LIST);
+			} else {
+				throw new RuntimeException("Unknown collision detector specified in YAML file.");
+			}
+		}
+
+		if (collisionAlgorithm != null) {
+			if (collisionAlgorithm.equals("simple")) {
+				settings.setCollisionAlgorithm(BatchSettings.SIMPLE_COLLISION);
+			} else if (collisionAlgorithm.equals("vectors")) {
+				settings.setCollisionAlgorithm(BatchSettings.VECTOR_TRANSFORMATION);
+			} else if (collisionAlgorithm.equals("matrices")) {
+				settings.setCollisionAlgorithm(BatchSettings.MATRIX_TRANSFORMATION);
+			} else if (collisionAlgorithm.equals("scalar-matrices")) {
+				settings.setCollisionAlgorithm(BatchSettings.SCALAR_MATRIX_TRANSFORMATION);
+			} else {
+				throw new RuntimeException("Unknown collision algorithm specified in YAML file.");
+			}
+		}
+
+		if (subcycling != null) {
+			settings.setSubcyclingLevels(subcycling);
+		}
+
+		if (courant != null) {
+			settings.setCourant(courant);
+		}
+
+		if (maxRotation != null) {
+			settings.setMaxRotation(maxRotation);
+		}
+
+		if (sort != null) {
+			settings.setSortInterval(sort);
+		}
+
+		if (sortOrder != null) {
+			if (sortOrder.equals("cell")) {
+				settings.setSortOrder(ParticleSorter.CELL_ORDER);
+			} else if (sortOrder.equals("morton")) {
+				settings.setSortOrder(ParticleSorter.MORTON_ORDER);
+			} else {
+				throw new RuntimeException("Unknown sort order specified in YAML file.");
+			}
+		}
+
+		if (tiles != null) {
+			if (tiles.size() < 2 || tiles.size() > 3) {
+				throw new RuntimeException("Tiles in YAML file need two or three entries.");
+			}
+			settings.setTiles(tiles.get(0), tiles.get(1), (tiles.size() == 3) ? tiles.get(2) : 1);
+		}
+
+		if (ranks != null) {
+			if (ranks < 1) {
+				throw new RuntimeException("Invalid number of ranks specified in YAML file.");
+			}
+			settings.setRanks(ranks);
+		}
+
+		if (output != null) {
+			output.applyTo(settings);
+		}
+	}
+
+	private int getInterpolator() {
+		if (interpolator.equals("cic")) {
+			return BatchSettings.CLOUD_IN_CELL;
+		} else if (interpolator.equals("chargeconserving")) {
+			return BatchSettings.CHARGE_CONSERVING_CIC;
+		} else {
+			throw new RuntimeException("Unknown interpolator specified in YAML file.");
+		}
+	}
+
+	private int getSimulationType() {
+		if (simulationType.equalsIgnoreCase("sequential")) {
+			return BatchSettings.SEQUENTIAL;
+		} else if (simulationType.equalsIgnoreCase("parallel")) {
+			return BatchSettings.PARALLEL;
+		} else {
+			throw new RuntimeException("Unknown simulation type specified in YAML file.");
+		}
+	}
 }
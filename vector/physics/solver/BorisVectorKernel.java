@@ -0,0 +1,92 @@
+/*
+ * OpenPixi - Open Particle-In-Cell (PIC) Simulator
+ * Copyright (C) 2012  OpenPixi.org
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package physics.solver;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import physics.particles.ParticleArrays;
+
+/**
+ * Boris push on several particles at once with the Vector API of the
+ * jdk.incubator.vector module. Each lane of a vector holds one particle.
+ *
+ * This class is only loaded by {@link BorisVector} if the module is
+ * present, i.e. if the JVM has been started with
+ * --add-modules jdk.incubator.vector.
+ */
+class BorisVectorKernel implements BorisKernel {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private BorisScalarKernel tail = new BorisScalarKernel();
+
+	public void push(ParticleArrays p, double step, int from, int to) {
+		int upper = from + SPECIES.loopBound(to - from);
+		double halfstep = step / 2;
+		DoubleVector two = DoubleVector.broadcast(SPECIES, 2);
+
+		int i = from;
+		for (; i < upper; i += SPECIES.length()) {
+			// q / m * dt / 2
+			DoubleVector qm = DoubleVector.fromArray(SPECIES, p.charge, i)
+					.div(DoubleVector.fromArray(SPECIES, p.mass, i)).mul(halfstep);
+
+			DoubleVector ex = DoubleVector.fromArray(SPECIES, p.ex, i).mul(qm);
+			DoubleVector ey = DoubleVector.fromArray(SPECIES, p.ey, i).mul(qm);
+			DoubleVector ez = DoubleVector.fromArray(SPECIES, p.ez, i).mul(qm);
+
+			// First half of the electric acceleration
+			DoubleVector vmx = DoubleVector.fromArray(SPECIES, p.vx, i).add(ex);
+			DoubleVector vmy = DoubleVector.fromArray(SPECIES, p.vy, i).add(ey);
+			DoubleVector vmz = DoubleVector.fromArray(SPECIES, p.vz, i).add(ez);
+
+			// Rotation in the magnetic field
+			DoubleVector tx = DoubleVector.fromArray(SPECIES, p.bx, i).mul(qm);
+			DoubleVector ty = DoubleVector.fromArray(SPECIES, p.by, i).mul(qm);
+			DoubleVector tz = DoubleVector.fromArray(SPECIES, p.bz, i).mul(qm);
+			DoubleVector s = two.div(tx.mul(tx).add(ty.mul(ty)).add(tz.mul(tz)).add(1));
+			DoubleVector sx = tx.mul(s);
+			DoubleVector sy = ty.mul(s);
+			DoubleVector sz = tz.mul(s);
+
+			DoubleVector vpx = vmx.add(vmy.mul(tz)).sub(vmz.mul(ty));
+			DoubleVector vpy = vmy.add(vmz.mul(tx)).sub(vmx.mul(tz));
+			DoubleVector vpz = vmz.add(vmx.mul(ty)).sub(vmy.mul(tx));
+
+			vmx = vmx.add(vpy.mul(sz)).sub(vpz.mul(sy));
+			vmy = vmy.add(vpz.mul(sx)).sub(vpx.mul(sz));
+			vmz = vmz.add(vpx.mul(sy)).sub(vpy.mul(sx));
+
+			// Second half of the electric acceleration
+			DoubleVector vx = vmx.add(ex);
+			DoubleVector vy = vmy.add(ey);
+			DoubleVector vz = vmz.add(ez);
+			vx.intoArray(p.vx, i);
+			vy.intoArray(p.vy, i);
+			vz.intoArray(p.vz, i);
+
+			DoubleVector.fromArray(SPECIES, p.x, i).add(vx.mul(step)).intoArray(p.x, i);
+			DoubleVector.fromArray(SPECIES, p.y, i).add(vy.mul(step)).intoArray(p.y, i);
+			DoubleVector.fromArray(SPECIES, p.z, i).add(vz.mul(step)).intoArray(p.z, i);
+		}
+
+		tail.push(p, step, i, to);
+	}
+}